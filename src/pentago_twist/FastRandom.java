@@ -0,0 +1,51 @@
+package pentago_twist;
+
+/**
+ * Small xorshift64* generator for playouts. Not thread-safe and not synchronized either,
+ * so each thread should own one (see current()); much cheaper than java.util.Random,
+ * whose every call is an atomic compare-and-set.
+ */
+public final class FastRandom {
+    private static final ThreadLocal<FastRandom> PER_THREAD =
+            ThreadLocal.withInitial(() -> new FastRandom(Thread.currentThread().getId() * 0x9E3779B97F4A7C15L + System.nanoTime()));
+
+    private long state;
+
+    public FastRandom(long seed) {
+        // Spread the seed so that nearby seeds give unrelated streams, and avoid the all-zero state.
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        state = z ^ (z >>> 31);
+        if (state == 0) { state = 0x9E3779B97F4A7C15L; }
+    }
+
+    /**
+     * @return the generator of the calling thread
+     */
+    public static FastRandom current() {
+        return PER_THREAD.get();
+    }
+
+    public long nextLong() {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * @param bound: positive upper bound
+     * @return an int in [0, bound), from the high bits by multiplication instead of a modulo
+     */
+    public int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * @return a double in [0, 1), from the top 53 bits
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+}
@@ -0,0 +1,272 @@
+package pentago_twist;
+
+import boardgame.Board;
+
+/**
+ * Tactical playouts on two colour masks: the player to move wins at once when it can, otherwise,
+ * if the opponent could complete five next move, blocks with a placement and twist after which
+ * it no longer can, otherwise plays a uniformly random move like PentagoPlayout. The checks are
+ * mask tests against the preimages of the win lines under each twist, deduplicated, so no board
+ * state is copied or changed, and a playout never allocates.
+ *
+ * Run main to compare playouts per second and playing strength with the uniform policy.
+ */
+public final class HeavyPlayout {
+    private static final int TWISTS = 2 * PentagoBitboard.NUM_QUADS;
+    private static final int NO_WIN = -1;
+
+    // Fewer pieces than this cannot be one placement away from five.
+    private static final int MIN_THREAT_PIECES = 4;
+
+    // Every distinct preimage of a win line under some twist, and the twists (bit quad * 2 + swap) giving it.
+    private static final long[] PREIMAGES;
+    private static final int[] PREIMAGE_TWISTS;
+
+    static {
+        long[] preimages = new long[PentagoBitboard.WIN_LINES.length * TWISTS];
+        int[] twists = new int[preimages.length];
+        int count = 0;
+        for (int line = 0; line < PentagoBitboard.WIN_LINES.length; line++) {
+            for (int twist = 0; twist < TWISTS; twist++) {
+                long preimage = PentagoBitboard.LINE_PREIMAGE[twist >> 1][twist & 1][line];
+                int i = 0;
+                while (i < count && preimages[i] != preimage) { i++; }
+                if (i == count) { preimages[count++] = preimage; }
+                twists[i] |= 1 << twist;
+            }
+        }
+        PREIMAGES = java.util.Arrays.copyOf(preimages, count);
+        PREIMAGE_TWISTS = java.util.Arrays.copyOf(twists, count);
+    }
+
+    private HeavyPlayout() {}
+
+    /**
+     * Plays a game to the end from a state, which is left untouched, and reports where each colour
+     * placed its marbles, as PentagoPlayout.play does.
+     * @param placements: array of two masks, indexed by colour, overwritten; or null
+     * @return the winner: PentagoBoardState.WHITE, BLACK, Board.DRAW, or Board.NOBODY if the turns ran out
+     */
+    public static int play(PentagoBoardState state, FastRandom rand, long[] placements) {
+        long whitePlaced = 0;
+        long blackPlaced = 0;
+        int winner = state.getWinner();
+        if (!state.gameOver()) {
+            long white = state.getWhiteMask();
+            long black = state.getBlackMask();
+            int turnPlayer = state.getTurnPlayer();
+            int turnNumber = state.getTurnNumber();
+
+            while (true) {
+                boolean whiteToMove = turnPlayer == PentagoBoardState.WHITE;
+                int move = whiteToMove ? chooseMove(white, black, rand) : chooseMove(black, white, rand);
+                long placed = 1L << (move >> 3);
+                int twist = move & 7;
+                int quad = twist >> 1;
+                int swap = twist & 1;
+
+                if (whiteToMove) {
+                    white |= placed;
+                    whitePlaced |= placed;
+                } else {
+                    black |= placed;
+                    blackPlaced |= placed;
+                }
+                white = PentagoBitboard.twist(white, quad, swap);
+                black = PentagoBitboard.twist(black, quad, swap);
+
+                // Same rules as PentagoBoardState.updateWinner.
+                boolean whiteWin = PentagoBitboard.hasFive(white);
+                boolean blackWin = PentagoBitboard.hasFive(black);
+                if (whiteWin && blackWin) { winner = Board.DRAW; break; }
+                if (whiteWin) { winner = PentagoBoardState.WHITE; break; }
+                if (blackWin) { winner = PentagoBoardState.BLACK; break; }
+
+                if (turnPlayer != PentagoBoardState.WHITE) { turnNumber++; }
+                turnPlayer = 1 - turnPlayer;
+                if (turnNumber >= PentagoBoardState.MAX_TURNS - 1 && turnPlayer == PentagoBoardState.BLACK) {
+                    winner = Board.NOBODY; // As in PentagoBoardState, the last move is checked before the turn ends
+                    break;
+                }
+            }
+        }
+        if (placements != null) {
+            placements[PentagoBoardState.WHITE] = whitePlaced;
+            placements[PentagoBoardState.BLACK] = blackPlaced;
+        }
+        return winner;
+    }
+
+    /**
+     * Chooses the move of the player with the pieces mine: a win if there is one, else, if opp
+     * may be a move from five, a block that still holds after its twist, else a random move.
+     * One pass over the preimages looks for both the win and the cells opp could complete.
+     * A block is a placement and twist after which opp has neither five nor a win in one,
+     * tried first on those cells, then on any empty cell as a twist may break the line too,
+     * each from a random start; without one the position is lost and any threat cell will do.
+     * @return cell * 8 + twist, the twist being quad * 2 + swap
+     */
+    static int chooseMove(long mine, long opp, FastRandom rand) {
+        long empty = ~(mine | opp) & PentagoBitboard.FULL;
+        int win = NO_WIN;
+        long threats = 0;
+        boolean threatened = false;
+        if (Long.bitCount(mine) >= MIN_THREAT_PIECES || Long.bitCount(opp) >= MIN_THREAT_PIECES) {
+            for (int i = 0; i < PREIMAGES.length; i++) {
+                long missing = PREIMAGES[i] & ~mine;
+                if ((missing & (missing - 1)) == 0 && (missing == 0 || (missing & empty) != 0)) {
+                    win = winThrough(i, missing, opp);
+                    if (win != NO_WIN) { break; }
+                }
+                long blocking = PREIMAGES[i] & ~opp;
+                if ((blocking & (blocking - 1)) == 0 && (blocking == 0 || (blocking & empty) != 0)) {
+                    threats |= blocking;
+                    threatened = true;
+                }
+            }
+        }
+
+        if (win != NO_WIN) {
+            return win >> 3 == PentagoBitboard.NUM_CELLS ? Long.numberOfTrailingZeros(empty) << 3 | win & 7 : win;
+        }
+        if (threatened) {
+            int block = findBlock(mine, opp, threats, rand);
+            if (block == NO_WIN) { block = findBlock(mine, opp, empty & ~threats, rand); }
+            if (block != NO_WIN) { return block; }
+        }
+        long cells = threats != 0 ? threats : empty;
+        return nthCell(cells, rand.nextInt(Long.bitCount(cells))) << 3 | rand.nextInt(TWISTS);
+    }
+
+    /**
+     * Tries the placements on some cells with every twist, from a random one, for a move after
+     * which opp has neither five, unless mine has too, nor a win in one.
+     * @return cell * 8 + twist; or NO_WIN if none of them blocks
+     */
+    private static int findBlock(long mine, long opp, long cells, FastRandom rand) {
+        int candidates = Long.bitCount(cells) * TWISTS;
+        if (candidates == 0) { return NO_WIN; }
+        int start = rand.nextInt(candidates);
+        for (int k = 0; k < candidates; k++) {
+            int candidate = (start + k) % candidates;
+            int cell = nthCell(cells, candidate / TWISTS);
+            int twist = candidate % TWISTS;
+            long mineAfter = PentagoBitboard.twist(mine | 1L << cell, twist >> 1, twist & 1);
+            long oppAfter = PentagoBitboard.twist(opp, twist >> 1, twist & 1);
+            if (PentagoBitboard.hasFive(mineAfter) || !PentagoBitboard.hasFive(oppAfter)
+                    && findWin(oppAfter, mineAfter, ~(mineAfter | oppAfter) & PentagoBitboard.FULL) == NO_WIN) {
+                return cell << 3 | twist;
+            }
+        }
+        return NO_WIN;
+    }
+
+    /**
+     * Finds a move completing five for mine and not for opp.
+     * @return cell * 8 + twist, with cell NUM_CELLS if any empty cell will do; or NO_WIN
+     */
+    private static int findWin(long mine, long opp, long empty) {
+        if (Long.bitCount(mine) < MIN_THREAT_PIECES) { return NO_WIN; }
+        for (int i = 0; i < PREIMAGES.length; i++) {
+            long missing = PREIMAGES[i] & ~mine;
+            if ((missing & (missing - 1)) == 0 && (missing == 0 || (missing & empty) != 0)) {
+                int win = winThrough(i, missing, opp);
+                if (win != NO_WIN) { return win; }
+            }
+        }
+        return NO_WIN;
+    }
+
+    /**
+     * @return the index of the n-th lowest set bit of cells
+     */
+    private static int nthCell(long cells, int n) {
+        for (; n > 0; n--) { cells &= cells - 1; }
+        return Long.numberOfTrailingZeros(cells);
+    }
+
+    /**
+     * Checks a win through a preimage mine lacks at most one empty cell of: any of its twists
+     * completes the line, and it only fails if it also completes one for opp.
+     * @param missing: the cell of the preimage mine lacks, or 0
+     * @return cell * 8 + twist, with cell NUM_CELLS if any empty cell will do; or NO_WIN
+     */
+    private static int winThrough(int preimage, long missing, long opp) {
+        for (int twists = PREIMAGE_TWISTS[preimage]; twists != 0; twists &= twists - 1) {
+            int twist = Integer.numberOfTrailingZeros(twists);
+            if (!PentagoBitboard.hasFive(PentagoBitboard.twist(opp, twist >> 1, twist & 1))) {
+                int cell = missing == 0 ? PentagoBitboard.NUM_CELLS : Long.numberOfTrailingZeros(missing);
+                return cell << 3 | twist;
+            }
+        }
+        return NO_WIN;
+    }
+
+    /**
+     * Compares this policy with the uniform one of PentagoPlayout: playouts per second from the
+     * initial position, and the share of games each wins when they play each other, colours alternating.
+     * Usage: java -cp bin pentago_twist.HeavyPlayout [seconds per measurement] [games]
+     */
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        PentagoBoardState start = new PentagoBoardState();
+        FastRandom rand = new FastRandom(2019);
+
+        // Warm up both before measuring.
+        double uniform = 0, heavy = 0;
+        for (int round = 0; round < 2; round++) {
+            double measure = round == 1 ? seconds : seconds / 3;
+            uniform = measure(measure, () -> PentagoPlayout.play(start, rand, null));
+            heavy = measure(measure, () -> play(start, rand, null));
+        }
+        System.out.println(String.format("Uniform policy: %10.0f playouts/s", uniform));
+        System.out.println(String.format("Heavy policy:   %10.0f playouts/s (%.1fx slower)", heavy, uniform / heavy));
+
+        int[] results = new int[3];
+        for (int game = 0; game < games; game++) {
+            int heavyColour = game % 2;
+            int winner = playMatch(heavyColour, rand);
+            results[winner == heavyColour ? 0 : winner == 1 - heavyColour ? 1 : 2]++;
+        }
+        System.out.println(String.format("Heavy against uniform over %d games: %.1f%% won, %.1f%% lost, %.1f%% neither",
+                games, 100.0 * results[0] / games, 100.0 * results[1] / games, 100.0 * results[2] / games));
+    }
+
+    private static double measure(double seconds, java.util.function.IntSupplier playout) {
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        long begin = System.nanoTime();
+        long count = 0;
+        int sink = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) { sink += playout.getAsInt(); }
+            count += 100;
+        }
+        if (sink == 42) { System.out.print(""); } // Keep the results alive
+        return count / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    /**
+     * Plays one game from the initial position, one colour choosing its moves like this policy
+     * and the other uniformly at random: each ply runs the chosen policy for a single move.
+     */
+    private static int playMatch(int heavyColour, FastRandom rand) {
+        PentagoBoardState state = new PentagoBoardState();
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        while (!state.gameOver()) {
+            int move;
+            if (state.getTurnPlayer() == heavyColour) {
+                boolean white = state.getTurnPlayer() == PentagoBoardState.WHITE;
+                int chosen = white ? chooseMove(state.getWhiteMask(), state.getBlackMask(), rand)
+                        : chooseMove(state.getBlackMask(), state.getWhiteMask(), rand);
+                int cell = chosen >> 3;
+                move = PentagoMove.pack(cell / PentagoBoardState.BOARD_SIZE, cell % PentagoBoardState.BOARD_SIZE,
+                        (chosen & 7) >> 1, chosen & 1, state.getTurnPlayer());
+            } else {
+                move = moves[rand.nextInt(state.getAllLegalMoves(moves))];
+            }
+            state.applyMove(move);
+        }
+        return state.getWinner();
+    }
+}
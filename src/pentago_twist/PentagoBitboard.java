@@ -0,0 +1,215 @@
+package pentago_twist;
+
+/**
+ * Static helpers for the bitboard representation used by PentagoBoardState.
+ *
+ * Each colour is stored as a 36-bit mask in a long. The cell at row x and
+ * column y lives at bit index x * BOARD_SIZE + y, so bit 0 is the top left
+ * corner and bit 35 the bottom right one.
+ */
+final class PentagoBitboard {
+    static final int BOARD_SIZE = PentagoBoardState.BOARD_SIZE;
+    static final int QUAD_SIZE = 3;
+    static final int NUM_QUADS = 4;
+    static final int NUM_CELLS = BOARD_SIZE * BOARD_SIZE;
+    static final long FULL = (1L << NUM_CELLS) - 1;
+
+    // Top left cell of every quadrant, in the same order as the quadrant ids of PentagoMove.
+    static final int[] QUAD_ROW = {0, 0, 3, 3};
+    static final int[] QUAD_COL = {0, 3, 0, 3};
+    static final long[] QUAD_MASK = new long[NUM_QUADS];
+
+    // Quadrant occupancy is a 9-bit pattern, local cell (r, c) at bit r * QUAD_SIZE + c.
+    static final int QUAD_PATTERNS = 1 << (QUAD_SIZE * QUAD_SIZE);
+    static final int ROTATE = 0;
+    static final int FLIP = 1;
+    static final int ROTATE_LEFT = 2; // Inverse of ROTATE, only used to undo moves
+
+    // TWIST[quad][swap][pattern] is the board mask of the quadrant after the twist.
+    static final long[][][] TWIST = new long[NUM_QUADS][3][QUAD_PATTERNS];
+    // PATTERN_TWIST[swap][pattern] is the 9-bit pattern after the twist, the same for every quadrant.
+    static final int[][] PATTERN_TWIST = new int[3][QUAD_PATTERNS];
+
+    // Zobrist keys: one per colour and cell, combined per quadrant pattern, plus one for black to move.
+    static final long[][] ZOBRIST_CELL = new long[2][NUM_CELLS];
+    static final long[][][] ZOBRIST_QUAD = new long[2][NUM_QUADS][QUAD_PATTERNS];
+    static final long ZOBRIST_BLACK_TO_MOVE;
+
+    // Every five-in-a-row segment: 12 horizontal, 12 vertical and 4 along each diagonal direction.
+    static final long[] WIN_LINES = new long[32];
+    // LINE_PREIMAGE[quad][swap][line] holds the cells that twist (quad, swap) moves onto WIN_LINES[line].
+    static final long[][][] LINE_PREIMAGE = new long[NUM_QUADS][2][WIN_LINES.length];
+
+    static {
+        java.util.Random keys = new java.util.Random(2019);
+        for (int colour = 0; colour < 2; colour++) {
+            for (int cell = 0; cell < NUM_CELLS; cell++) {
+                ZOBRIST_CELL[colour][cell] = keys.nextLong();
+            }
+        }
+        ZOBRIST_BLACK_TO_MOVE = keys.nextLong();
+
+        int lines = 0;
+        for (int i = 0; i < BOARD_SIZE; i++) {
+            for (int j = 0; j < 2; j++) {
+                WIN_LINES[lines++] = line(i, j, 0, 1);
+                WIN_LINES[lines++] = line(j, i, 1, 0);
+            }
+        }
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                WIN_LINES[lines++] = line(i, j, 1, 1);
+                WIN_LINES[lines++] = line(i, BOARD_SIZE - 1 - j, 1, -1);
+            }
+        }
+
+        for (int q = 0; q < NUM_QUADS; q++) {
+            for (int r = 0; r < QUAD_SIZE; r++) {
+                for (int c = 0; c < QUAD_SIZE; c++) {
+                    QUAD_MASK[q] |= bit(QUAD_ROW[q] + r, QUAD_COL[q] + c);
+                }
+            }
+            for (int pattern = 0; pattern < QUAD_PATTERNS; pattern++) {
+                for (int r = 0; r < QUAD_SIZE; r++) {
+                    for (int c = 0; c < QUAD_SIZE; c++) {
+                        if ((pattern & (1 << (r * QUAD_SIZE + c))) == 0) { continue; }
+                        // rotate 90 right: (r, c) -> (c, 2 - r)
+                        TWIST[q][ROTATE][pattern] |= bit(QUAD_ROW[q] + c, QUAD_COL[q] + QUAD_SIZE - 1 - r);
+                        // flip: (r, c) -> (r, 2 - c)
+                        TWIST[q][FLIP][pattern] |= bit(QUAD_ROW[q] + r, QUAD_COL[q] + QUAD_SIZE - 1 - c);
+                        // rotate 90 left: (r, c) -> (2 - c, r)
+                        TWIST[q][ROTATE_LEFT][pattern] |= bit(QUAD_ROW[q] + QUAD_SIZE - 1 - c, QUAD_COL[q] + r);
+                        for (int colour = 0; colour < 2; colour++) {
+                            ZOBRIST_QUAD[colour][q][pattern] ^= ZOBRIST_CELL[colour][index(QUAD_ROW[q] + r, QUAD_COL[q] + c)];
+                        }
+                    }
+                }
+            }
+        }
+        for (int swap = 0; swap < 3; swap++) {
+            for (int pattern = 0; pattern < QUAD_PATTERNS; pattern++) {
+                PATTERN_TWIST[swap][pattern] = quadrantPattern(TWIST[0][swap][pattern], 0);
+            }
+        }
+        for (int q = 0; q < NUM_QUADS; q++) {
+            for (int swap = 0; swap < 2; swap++) {
+                for (int i = 0; i < WIN_LINES.length; i++) {
+                    LINE_PREIMAGE[q][swap][i] = twist(WIN_LINES[i], q, inverseSwap(swap));
+                }
+            }
+        }
+    }
+
+    private PentagoBitboard() {}
+
+    static int index(int x, int y) {
+        return x * BOARD_SIZE + y;
+    }
+
+    static long bit(int x, int y) {
+        return 1L << index(x, y);
+    }
+
+    private static long line(int x, int y, int dx, int dy) {
+        long mask = 0;
+        for (int k = 0; k < 5; k++) {
+            mask |= bit(x + k * dx, y + k * dy);
+        }
+        return mask;
+    }
+
+    /**
+     * @return true if the mask contains five in a row in any direction
+     */
+    static boolean hasFive(long mask) {
+        for (long line : WIN_LINES) {
+            if ((mask & line) == line) { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Cells where the owner of mine can place a piece so that the twist (quad, swap) that follows
+     * completes five in a row for mine and none for opp (which would make it a draw).
+     * A line is completed when its preimage under the twist misses at most one piece of mine.
+     * @return mask of the placement cells, before the twist
+     */
+    static long winningPlacements(long mine, long opp, int quad, int swap) {
+        if (hasFive(twist(opp, quad, swap))) { return 0; }
+        long empty = ~(mine | opp) & FULL;
+        long cells = 0;
+        for (long preimage : LINE_PREIMAGE[quad][swap]) {
+            long missing = preimage & ~mine;
+            if (missing == 0) { return empty; } // The twist alone completes the line
+            if ((missing & (missing - 1)) == 0) { cells |= missing; }
+        }
+        return cells & empty;
+    }
+
+    /**
+     * @return true if the owner of mine, being the player to move, can win with a single move
+     */
+    static boolean hasWinningMove(long mine, long opp) {
+        for (int q = 0; q < NUM_QUADS; q++) {
+            for (int swap = 0; swap < 2; swap++) {
+                if (winningPlacements(mine, opp, q, swap) != 0) { return true; }
+            }
+        }
+        return false;
+    }
+
+    static int quadrantOf(int x, int y) {
+        return (x < QUAD_SIZE ? 0 : 2) + (y < QUAD_SIZE ? 0 : 1);
+    }
+
+    /**
+     * Gathers the 9 cells of a quadrant into a pattern index for the TWIST table.
+     */
+    static int quadrantPattern(long mask, int quad) {
+        int shift = index(QUAD_ROW[quad], QUAD_COL[quad]);
+        return (int) ((mask >>> shift) & 7)
+                | (int) ((mask >>> (shift + BOARD_SIZE - QUAD_SIZE)) & (7 << QUAD_SIZE))
+                | (int) ((mask >>> (shift + 2 * (BOARD_SIZE - QUAD_SIZE))) & (7 << (2 * QUAD_SIZE)));
+    }
+
+    /**
+     * Applies a quadrant twist to a single colour mask.
+     * @param mask: pieces of one colour
+     * @param quad: quadrant id, 0 to 3
+     * @param swap: 0 rotates the quadrant 90 degrees right, 1 flips it horizontally
+     * @return the mask with the quadrant twisted and every other cell untouched
+     */
+    static long twist(long mask, int quad, int swap) {
+        return (mask & ~QUAD_MASK[quad]) | TWIST[quad][swap][quadrantPattern(mask, quad)];
+    }
+
+    /**
+     * Change of the Zobrist hash when one colour of a quadrant is twisted.
+     * @param colour: PentagoBoardState.WHITE or BLACK
+     * @param mask: pieces of that colour before the twist
+     */
+    static long zobristTwist(int colour, long mask, int quad, int swap) {
+        int before = quadrantPattern(mask, quad);
+        int after = PATTERN_TWIST[swap][before];
+        return ZOBRIST_QUAD[colour][quad][before] ^ ZOBRIST_QUAD[colour][quad][after];
+    }
+
+    /**
+     * Computes the Zobrist hash of a position from scratch.
+     */
+    static long zobrist(long white, long black, int turnPlayer) {
+        long hash = turnPlayer == PentagoBoardState.BLACK ? ZOBRIST_BLACK_TO_MOVE : 0;
+        for (int q = 0; q < NUM_QUADS; q++) {
+            hash ^= ZOBRIST_QUAD[PentagoBoardState.WHITE][q][quadrantPattern(white, q)];
+            hash ^= ZOBRIST_QUAD[PentagoBoardState.BLACK][q][quadrantPattern(black, q)];
+        }
+        return hash;
+    }
+
+    /**
+     * @return the swap that reverts a twist: a flip is its own inverse, a right rotation is undone by a left one
+     */
+    static int inverseSwap(int swap) {
+        return swap == ROTATE ? ROTATE_LEFT : swap;
+    }
+}
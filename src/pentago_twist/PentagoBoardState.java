@@ -4,7 +4,6 @@ import boardgame.BoardState;
 import boardgame.Move;
 
 import java.util.ArrayList;
-import java.util.function.UnaryOperator;
 import java.util.Random;
 
 import java.util.Scanner;
@@ -21,7 +20,9 @@ public class PentagoBoardState extends BoardState {
     public static final int WHITE = 0;
     public static final int BLACK = 1;
     public static final int MAX_TURNS = 18;
+    public static final int MAX_LEGAL_MOVES = BOARD_SIZE * BOARD_SIZE * 4 * 2; // Buffer size for getAllLegalMoves(int[])
     private static final int ILLEGAL = -1;
+    private static final long NO_CELL_NEEDED = 1L << 63; // Outside the 36 cells, see getMovesByReply
     public enum Piece {
         BLACK, WHITE, EMPTY;
 
@@ -30,37 +31,32 @@ public class PentagoBoardState extends BoardState {
         }
     }
 
-    private static final UnaryOperator<PentagoCoord> getNextHorizontal = c -> new PentagoCoord(c.getX(), c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextVertical = c -> new PentagoCoord(c.getX()+1, c.getY());
-    private static final UnaryOperator<PentagoCoord> getNextDiagRight = c -> new PentagoCoord(c.getX()+1, c.getY()+1);
-    private static final UnaryOperator<PentagoCoord> getNextDiagLeft = c -> new PentagoCoord(c.getX()+1, c.getY()-1);
     private static int FIRST_PLAYER = 0;
 
-    private Piece[][] board;
-    private Piece[][][] quadrants;
+    // Scratch set for getDistinctSuccessors, one per search thread.
+    private static final ThreadLocal<PentagoPositionSet> SUCCESSOR_SET =
+            ThreadLocal.withInitial(() -> new PentagoPositionSet(MAX_LEGAL_MOVES));
+
+    // Scratch threat masks for getMovesByReply, one per opponent twist and per search thread, so that
+    // move ordering never allocates. Static, as a field per state would grow every search tree node.
+    private static final ThreadLocal<long[]> REPLY_THREATS =
+            ThreadLocal.withInitial(() -> new long[2 * NUM_QUADS]);
+
+    // One 36-bit mask per colour, see PentagoBitboard for the cell layout.
+    private long white;
+    private long black;
+    private long zobrist; // Hash of the masks and the player to move, updated on every placement and twist
     private int turnPlayer;
     private int turnNumber;
     private int winner;
-    private Random rand;
+    private Random rand; // Created on first use, cloning never needs it.
+
+    // Piece[][] view of the masks, only built when getBoard() or getPieceAt() is called.
+    private Piece[][] board;
+    private boolean boardStale;
 
     PentagoBoardState() {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                this.board[i][j] = Piece.EMPTY;
-            }
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                for (int k = 0; k < QUAD_SIZE; k++) {
-                    this.quadrants[i][j][k] = Piece.EMPTY;
-                }
-            }
-        }
-
-        rand = new Random(2019);
         winner = Board.NOBODY;
         turnPlayer = FIRST_PLAYER;
         turnNumber = 0;
@@ -69,30 +65,85 @@ public class PentagoBoardState extends BoardState {
     // For cloning
     private PentagoBoardState(PentagoBoardState pbs) {
         super();
-        this.board = new Piece[BOARD_SIZE][BOARD_SIZE];
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            System.arraycopy(pbs.board[i], 0, this.board[i], 0, BOARD_SIZE);
-        }
-        this.quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
-        for (int i = 0; i < NUM_QUADS; i++) {
-            for (int j = 0; j < QUAD_SIZE; j++) {
-                System.arraycopy(pbs.quadrants[i][j], 0, this.quadrants[i][j], 0, QUAD_SIZE);
-            }
-        }
-
-        rand = new Random(2019);
+        this.white = pbs.white;
+        this.black = pbs.black;
+        this.zobrist = pbs.zobrist;
         this.winner = pbs.winner;
         this.turnPlayer = pbs.turnPlayer;
         this.turnNumber = pbs.turnNumber;
     }
 
-    public Piece[][] getBoard() { return this.board; }
+    // For positions built directly from masks, e.g. symmetric images
+    PentagoBoardState(long white, long black, int turnPlayer, int turnNumber, int winner) {
+        super();
+        this.white = white;
+        this.black = black;
+        this.zobrist = PentagoBitboard.zobrist(white, black, turnPlayer);
+        this.winner = winner;
+        this.turnPlayer = turnPlayer;
+        this.turnNumber = turnNumber;
+    }
+
+    /**
+     * Overwrites this state with another one, so search code can reuse a scratch state instead of cloning.
+     * @param other: the state to copy
+     */
+    public void copyFrom(PentagoBoardState other) {
+        this.white = other.white;
+        this.black = other.black;
+        this.zobrist = other.zobrist;
+        this.winner = other.winner;
+        this.turnPlayer = other.turnPlayer;
+        this.turnNumber = other.turnNumber;
+        this.boardStale = true;
+    }
+
+    long getWhiteMask() { return white; }
+
+    long getBlackMask() { return black; }
+
+    /**
+     * Returns a Piece[][] view of the board. The array is rebuilt from the masks after every move,
+     * so writing into it only changes what this view shows until the next move is processed.
+     */
+    public Piece[][] getBoard() {
+        if (board == null) {
+            board = new Piece[BOARD_SIZE][BOARD_SIZE];
+            boardStale = true;
+        }
+        if (boardStale) {
+            for (int i = 0; i < BOARD_SIZE; i++) {
+                for (int j = 0; j < BOARD_SIZE; j++) {
+                    board[i][j] = pieceAt(i, j);
+                }
+            }
+            boardStale = false;
+        }
+        return board;
+    }
 
     @Override
     public Object clone() {
         return new PentagoBoardState(this);
     }
 
+    /**
+     * @return 64-bit Zobrist hash of the pieces and the player to move
+     */
+    public long zobrist() { return zobrist; }
+
+    @Override
+    public int hashCode() { return (int) (zobrist ^ (zobrist >>> 32)); }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) { return true; }
+        if (!(o instanceof PentagoBoardState)) { return false; }
+        PentagoBoardState other = (PentagoBoardState) o;
+        return zobrist == other.zobrist && white == other.white && black == other.black
+                && turnPlayer == other.turnPlayer && turnNumber == other.turnNumber && winner == other.winner;
+    }
+
     @Override
     public int getWinner() { return winner; }
 
@@ -106,13 +157,14 @@ public class PentagoBoardState extends BoardState {
     public int getTurnNumber() { return turnNumber; }
 
     @Override
-    public boolean isInitialized() { return board != null; }
+    public boolean isInitialized() { return true; }
 
     @Override
     public int firstPlayer() { return FIRST_PLAYER; }
 
     @Override
     public Move getRandomMove() {
+        if (rand == null) { rand = new Random(2019); }
         ArrayList<PentagoMove> moves = getAllLegalMoves();
         return moves.get(rand.nextInt(moves.size()));
     }
@@ -121,7 +173,7 @@ public class PentagoBoardState extends BoardState {
         if (xPos < 0 || xPos >= BOARD_SIZE || yPos < 0 || yPos >= BOARD_SIZE) {
             throw new IllegalArgumentException("Out of range");
         }
-        return board[xPos][yPos];
+        return getBoard()[xPos][yPos];
     }
 
     public Piece getPieceAt(PentagoCoord coord) {
@@ -130,9 +182,10 @@ public class PentagoBoardState extends BoardState {
 
     public ArrayList<PentagoMove> getAllLegalMoves() {
         ArrayList<PentagoMove> legalMoves = new ArrayList<>();
+        long empty = ~(white | black);
         for (int i = 0; i < BOARD_SIZE; i++) { //Iterate through positions on board
             for (int j = 0; j < BOARD_SIZE; j++) {
-                if (board[i][j] == Piece.EMPTY) {
+                if ((empty & PentagoBitboard.bit(i, j)) != 0) {
 //                    for (int k = 0; k < NUM_QUADS - 1; k++) { // Iterate through valid swaps
 //                        for (int l = k+1; l < NUM_QUADS; l++) {
 //                            legalMoves.add(new PentagoMove(i, j, k, l, turnPlayer));
@@ -149,6 +202,192 @@ public class PentagoBoardState extends BoardState {
         return legalMoves;
     }
 
+    /**
+     * Writes every legal move, packed with PentagoMove.pack, into the buffer in the same order as getAllLegalMoves().
+     * @param buffer: array of at least MAX_LEGAL_MOVES entries
+     * @return number of moves written
+     */
+    public int getAllLegalMoves(int[] buffer) {
+        int count = 0;
+        long empty = ~(white | black) & PentagoBitboard.FULL;
+        while (empty != 0) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            empty &= empty - 1;
+            for (int k = 0; k < NUM_QUADS; k++) {
+                for (int l = 0; l < 2; l++) {
+                    buffer[count++] = PentagoMove.pack(cell / BOARD_SIZE, cell % BOARD_SIZE, k, l, turnPlayer);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes one packed move per distinct successor position into the buffer, so expanding them
+     * never builds the same position twice. Twists that leave a quadrant unchanged (an empty or
+     * symmetric quadrant) all give the placement-only position and are emitted once per placement,
+     * and a rotate/flip pair with the same image is emitted once; both are detected by comparing
+     * 9-bit quadrant signatures. Remaining collisions between different placements are filtered
+     * with a hash set on the resulting masks.
+     * @param buffer: array of at least MAX_LEGAL_MOVES entries
+     * @return number of moves written
+     */
+    public int getDistinctSuccessors(int[] buffer) {
+        PentagoPositionSet seen = SUCCESSOR_SET.get();
+        seen.clear();
+        int count = 0;
+        long empty = ~(white | black) & PentagoBitboard.FULL;
+        while (empty != 0) {
+            int cell = Long.numberOfTrailingZeros(empty);
+            empty &= empty - 1;
+            long placedWhite = turnPlayer == WHITE ? white | 1L << cell : white;
+            long placedBlack = turnPlayer == BLACK ? black | 1L << cell : black;
+            long placedHash = zobrist ^ PentagoBitboard.ZOBRIST_CELL[turnPlayer][cell];
+            boolean unchangedEmitted = false;
+
+            for (int k = 0; k < NUM_QUADS; k++) {
+                int whitePattern = PentagoBitboard.quadrantPattern(placedWhite, k);
+                int blackPattern = PentagoBitboard.quadrantPattern(placedBlack, k);
+                int rotatedWhite = PentagoBitboard.PATTERN_TWIST[PentagoBitboard.ROTATE][whitePattern];
+                int rotatedBlack = PentagoBitboard.PATTERN_TWIST[PentagoBitboard.ROTATE][blackPattern];
+                for (int l = 0; l < 2; l++) {
+                    int twistedWhite = PentagoBitboard.PATTERN_TWIST[l][whitePattern];
+                    int twistedBlack = PentagoBitboard.PATTERN_TWIST[l][blackPattern];
+                    long hash = placedHash;
+                    if (twistedWhite == whitePattern && twistedBlack == blackPattern) {
+                        if (unchangedEmitted) { continue; }
+                        unchangedEmitted = true;
+                    } else if (l == PentagoBitboard.FLIP && twistedWhite == rotatedWhite && twistedBlack == rotatedBlack) {
+                        continue; // Same image as the rotation of this quadrant
+                    } else {
+                        hash ^= PentagoBitboard.ZOBRIST_QUAD[WHITE][k][whitePattern] ^ PentagoBitboard.ZOBRIST_QUAD[WHITE][k][twistedWhite]
+                                ^ PentagoBitboard.ZOBRIST_QUAD[BLACK][k][blackPattern] ^ PentagoBitboard.ZOBRIST_QUAD[BLACK][k][twistedBlack];
+                    }
+                    long resultWhite = (placedWhite & ~PentagoBitboard.QUAD_MASK[k]) | PentagoBitboard.TWIST[k][l][whitePattern];
+                    long resultBlack = (placedBlack & ~PentagoBitboard.QUAD_MASK[k]) | PentagoBitboard.TWIST[k][l][blackPattern];
+                    if (seen.add(hash, resultWhite, resultBlack)) {
+                        buffer[count++] = PentagoMove.pack(cell / BOARD_SIZE, cell % BOARD_SIZE, k, l, turnPlayer);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes every move that wins on the spot for the player to move: five in a row after the twist
+     * while the opponent has none. Found with the line masks and twist tables of PentagoBitboard,
+     * without playing any move. Moves are grouped by quadrant and twist.
+     * @param buffer: array of at least MAX_LEGAL_MOVES entries
+     * @return number of moves written
+     */
+    public int getWinningMoves(int[] buffer) {
+        if (gameOver()) { return 0; }
+        long mine = turnPlayer == WHITE ? white : black;
+        long opp = turnPlayer == WHITE ? black : white;
+        int count = 0;
+        for (int k = 0; k < NUM_QUADS; k++) {
+            for (int l = 0; l < 2; l++) {
+                long cells = PentagoBitboard.winningPlacements(mine, opp, k, l);
+                while (cells != 0) {
+                    int cell = Long.numberOfTrailingZeros(cells);
+                    cells &= cells - 1;
+                    buffer[count++] = PentagoMove.pack(cell / BOARD_SIZE, cell % BOARD_SIZE, k, l, turnPlayer);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the player to move can win with a single move
+     */
+    public boolean hasWinningMove() {
+        if (gameOver()) { return false; }
+        return turnPlayer == WHITE ? PentagoBitboard.hasWinningMove(white, black) : PentagoBitboard.hasWinningMove(black, white);
+    }
+
+    /**
+     * Writes every legal move after which the opponent can win with their reply.
+     * @param buffer: array of at least MAX_LEGAL_MOVES entries
+     * @return number of moves written
+     */
+    public int getMovesAllowingWin(int[] buffer) {
+        return getMovesByReply(buffer, true);
+    }
+
+    /**
+     * Writes every legal move after which the opponent cannot win with their reply, including moves
+     * that end the game. When the opponent threatens a win these are the forced blocks; when no move
+     * is safe the position is lost against correct play.
+     * @param buffer: array of at least MAX_LEGAL_MOVES entries
+     * @return number of moves written
+     */
+    public int getSafeMoves(int[] buffer) {
+        return getMovesByReply(buffer, false);
+    }
+
+    /**
+     * Splits the legal moves on whether the opponent gets a win-in-one, without trial play.
+     * After our twist the opponent's pieces no longer depend on where we placed, so for each of
+     * their twists the cells that would complete one of their lines are computed once. Our placement
+     * only matters by occupying such a cell, or by giving us five after their twist (a draw).
+     */
+    private int getMovesByReply(int[] buffer, boolean allowingWin) {
+        if (gameOver()) { return 0; }
+        long mine = turnPlayer == WHITE ? white : black;
+        long opp = turnPlayer == WHITE ? black : white;
+        long empty = ~(white | black) & PentagoBitboard.FULL;
+        boolean lastMove = turnPlayer == WHITE && turnNumber >= MAX_TURNS - 1;
+        // Per opponent twist: the cells completing one of their lines, plus NO_CELL_NEEDED when the twist alone does.
+        long[] threats = REPLY_THREATS.get();
+        int count = 0;
+
+        for (int k = 0; k < NUM_QUADS; k++) {
+            for (int l = 0; l < 2; l++) {
+                long twistedMine = PentagoBitboard.twist(mine, k, l);
+                long twistedOpp = PentagoBitboard.twist(opp, k, l);
+                boolean gameEnds = lastMove || PentagoBitboard.hasFive(twistedOpp);
+
+                boolean threatened = false;
+                for (int t = 0; t < 2 * NUM_QUADS && !gameEnds; t++) {
+                    long cells = 0;
+                    for (long preimage : PentagoBitboard.LINE_PREIMAGE[t >> 1][t & 1]) {
+                        long missing = preimage & ~twistedOpp;
+                        if (missing == 0) {
+                            cells |= NO_CELL_NEEDED;
+                        } else if ((missing & (missing - 1)) == 0 && (missing & twistedMine) == 0) {
+                            cells |= missing;
+                        }
+                    }
+                    threats[t] = cells;
+                    threatened |= cells != 0;
+                }
+
+                long placements = empty;
+                while (placements != 0) {
+                    int cell = Long.numberOfTrailingZeros(placements);
+                    placements &= placements - 1;
+                    boolean allowsWin = false;
+                    if (threatened) {
+                        long placed = PentagoBitboard.twist(1L << cell, k, l);
+                        long mineAfter = twistedMine | placed;
+                        if (!PentagoBitboard.hasFive(mineAfter)) {
+                            for (int t = 0; t < 2 * NUM_QUADS && !allowsWin; t++) {
+                                allowsWin = (threats[t] & ~placed) != 0
+                                        && !PentagoBitboard.hasFive(PentagoBitboard.twist(mineAfter, t >> 1, t & 1));
+                            }
+                        }
+                    }
+                    if (allowsWin == allowingWin) {
+                        buffer[count++] = PentagoMove.pack(cell / BOARD_SIZE, cell % BOARD_SIZE, k, l, turnPlayer);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
     public boolean isLegal(PentagoMove m) {
         // for swap
         //if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= NUM_QUADS) { return false; }
@@ -157,10 +396,11 @@ public class PentagoBoardState extends BoardState {
         // update for rotate90 and flip
         if (m.getASwap() < 0 || m.getASwap() >= NUM_QUADS || m.getBSwap() < 0 || m.getBSwap() >= 2) { return false; }
 
-        PentagoCoord c = m.getMoveCoord();
-        if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
+        int x = m.getX();
+        int y = m.getY();
+        if (x >= BOARD_SIZE || x < 0 || y < 0 || y >= BOARD_SIZE) { return false; }
         if (turnPlayer != m.getPlayerID() || m.getPlayerID() == ILLEGAL) { return false; } //Check right player
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return isEmpty(x, y);
     }
 
     /**
@@ -170,101 +410,106 @@ public class PentagoBoardState extends BoardState {
      */
     public boolean isPlaceLegal(PentagoCoord c) {
         if (c.getX() >= BOARD_SIZE || c.getX() < 0 || c.getY() < 0 || c.getY() >= BOARD_SIZE) { return false; }
-        return board[c.getX()][c.getY()] == Piece.EMPTY;
+        return isEmpty(c.getX(), c.getY());
+    }
+
+    private boolean isEmpty(int x, int y) {
+        return ((white | black) & PentagoBitboard.bit(x, y)) == 0;
+    }
+
+    private Piece pieceAt(int x, int y) {
+        long bit = PentagoBitboard.bit(x, y);
+        if ((white & bit) != 0) { return Piece.WHITE; }
+        return (black & bit) != 0 ? Piece.BLACK : Piece.EMPTY;
     }
 
     public void processMove(PentagoMove m) throws IllegalArgumentException {
         if (!isLegal(m)) { throw new IllegalArgumentException("Invalid move. Move: " + m.toPrettyString()); }
-        updateQuadrants(m);
-        updateWinner();
-        if (turnPlayer != FIRST_PLAYER) { turnNumber += 1; } // Update the turn number if needed
-        turnPlayer = 1 - turnPlayer; // Swap player
+        applyMove(m);
     }
 
     /**
-     * Updates the appropriate quandrant based on the location of the move m
+     * Plays a move in place and returns a token that undoMove uses to restore this exact state.
+     * Unlike processMove the move is not validated, so it must come from getAllLegalMoves
+     * (or otherwise be legal for the player to move).
      * @param m: Pentago move
+     * @return undo token for undoMove
      */
-    private void updateQuadrants(PentagoMove m) {
-        Piece turnPiece = turnPlayer == WHITE ? Piece.WHITE : Piece.BLACK;
-        int x = m.getMoveCoord().getX();
-        int y = m.getMoveCoord().getY();
-        boolean isLeftQuadMove = y / 3 == 0;
-        boolean isTopQuadMove = x / 3 == 0;
-        if (isLeftQuadMove && isTopQuadMove) { //Top left quadrant
-            quadrants[0][x][y] = turnPiece;
-        } else if (!isLeftQuadMove && isTopQuadMove) { //Top right quadrant
-            quadrants[1][x][y % QUAD_SIZE] = turnPiece;
-        } else if (isLeftQuadMove) { //Bottom left quadrant
-            quadrants[2][x % QUAD_SIZE][y] = turnPiece;
-        } else { //Bottom right quadrant
-            quadrants[3][x % QUAD_SIZE][y % QUAD_SIZE] = turnPiece;
-        }
-
-        //Swapping mechanism
-        int a = m.getASwap();
-        int b = m.getBSwap();
-        Piece[][] tmp = quadrants[a];
-        //quadrants[a] = quadrants[b];
-        //quadrants[b] = tmp;
-        Piece[][] tmp2 = new Piece [quadrants[a].length][quadrants[a].length];
-
-
-        int N = tmp.length;
-        // check
-//        for (int j = 0; j < N; j++)
-//        {
-//            for (int i = 0; i <N; i++){
-//                System.out.print(tmp[j][i]);
-//            }
-//        }
-        switch (b){
-            case 0:
-                // rotate 90 right
-                //System.out.println("Rotate");
-                for (int j = 0; j < N; j++)
-                {
-                    for (int i = N - 1; i >= 0; i--) {
-                        //System.arraycopy(quadrants[a][j],  N - 1 - i, tmp[i], j, 1);
-                        System.arraycopy(tmp[i], j, tmp2[j],  N - 1 - i, 1);
-                    }
-                }
-                break;
-            case 1:
-               // flip a quadrant
-                //System.out.println("Flip");
-                for (int j = 0; j < N; j++)
-                {
-                    for (int i = N - 1; i >= 0; i--) {
-                        //System.arraycopy(quadrants[a][j],  N - 1 - i, tmp[i], j, 1);
-                        System.arraycopy(tmp[j], i, tmp2[j],  N - 1 - i, 1);
-                    }
-                }
-                break;
-
-        }
-
+    public long applyMove(PentagoMove m) {
+        return applyMove(PentagoBitboard.index(m.getX(), m.getY()), m.getASwap(), m.getBSwap());
+    }
 
-        quadrants[a] = tmp2;
-        buildBoardFromQuadrants();
+    /**
+     * applyMove for a move packed with PentagoMove.pack, e.g. from getAllLegalMoves(int[]).
+     * @param move: packed legal move
+     * @return undo token for undoMove
+     */
+    public long applyMove(int move) {
+        return applyMove(PentagoMove.packedCell(move), PentagoMove.packedASwap(move), PentagoMove.packedBSwap(move));
     }
 
+    private long applyMove(int cell, int a, int b) {
+        // Token layout: cell (6 bits), quadrant (2), swap (1), turn player (1), turn number (8), winner (high 32)
+        long undo = cell | a << 6 | b << 8 | turnPlayer << 9 | turnNumber << 10 | (long) winner << 32;
+        updateQuadrants(cell, a, b);
+        updateWinner();
+        if (turnPlayer != FIRST_PLAYER) { turnNumber += 1; } // Update the turn number if needed
+        turnPlayer = 1 - turnPlayer; // Swap player
+        zobrist ^= PentagoBitboard.ZOBRIST_BLACK_TO_MOVE;
+        return undo;
+    }
 
+    /**
+     * Reverts the move that returned this token. Moves must be undone in the reverse order they were applied.
+     * @param undo: token returned by applyMove
+     */
+    public void undoMove(long undo) {
+        int cell = (int) (undo & 63);
+        int a = (int) (undo >>> 6) & 3;
+        int b = (int) (undo >>> 8) & 1;
+        turnPlayer = (int) (undo >>> 9) & 1;
+        turnNumber = (int) (undo >>> 10) & 255;
+        winner = (int) (undo >>> 32);
+        zobrist ^= PentagoBitboard.ZOBRIST_BLACK_TO_MOVE;
+
+        int undoSwap = PentagoBitboard.inverseSwap(b);
+        zobrist ^= PentagoBitboard.zobristTwist(WHITE, white, a, undoSwap) ^ PentagoBitboard.zobristTwist(BLACK, black, a, undoSwap);
+        white = PentagoBitboard.twist(white, a, undoSwap);
+        black = PentagoBitboard.twist(black, a, undoSwap);
+        if (turnPlayer == WHITE) {
+            white &= ~(1L << cell);
+        } else {
+            black &= ~(1L << cell);
+        }
+        zobrist ^= PentagoBitboard.ZOBRIST_CELL[turnPlayer][cell];
+        boardStale = true;
+    }
 
-    private void buildBoardFromQuadrants() {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            int quadrantRow = i < 3 ? i : i - 3;
-            int leftQuad = i < 3 ? 0 : 2;
-            int rightQuad = i < 3 ? 1 : 3;
-            System.arraycopy(quadrants[leftQuad][quadrantRow], 0, board[i], 0, 3);
-            System.arraycopy(quadrants[rightQuad][quadrantRow], 0, board[i], 3, 3);
+    /**
+     * Places the piece of the player to move on a cell and applies the rotation/flip to the masks
+     * @param cell: bit index of the placement
+     * @param a: quadrant to twist
+     * @param b: 0 to rotate 90 right, 1 to flip
+     */
+    private void updateQuadrants(int cell, int a, int b) {
+        long placed = 1L << cell;
+        if (turnPlayer == WHITE) {
+            white |= placed;
+        } else {
+            black |= placed;
         }
+        zobrist ^= PentagoBitboard.ZOBRIST_CELL[turnPlayer][cell];
+
+        zobrist ^= PentagoBitboard.zobristTwist(WHITE, white, a, b) ^ PentagoBitboard.zobristTwist(BLACK, black, a, b);
+        white = PentagoBitboard.twist(white, a, b);
+        black = PentagoBitboard.twist(black, a, b);
+        boardStale = true;
     }
 
     private void updateWinner() {
-        boolean playerWin = checkVerticalWin(turnPlayer) || checkHorizontalWin(turnPlayer) || checkDiagRightWin(turnPlayer) || checkDiagLeftWin(turnPlayer);
+        boolean playerWin = PentagoBitboard.hasFive(turnPlayer == WHITE ? white : black);
         int otherPlayer = 1 - turnPlayer;
-        boolean otherWin = checkVerticalWin(otherPlayer) || checkHorizontalWin(otherPlayer) || checkDiagRightWin(otherPlayer) || checkDiagLeftWin(otherPlayer);
+        boolean otherWin = PentagoBitboard.hasFive(turnPlayer == WHITE ? black : white);
         if (playerWin) { // Current player has won
             winner = otherWin ? Board.DRAW : turnPlayer;
         } else if (otherWin) { // Player's move caused the opponent to win
@@ -279,52 +524,6 @@ public class PentagoBoardState extends BoardState {
         return ((turnNumber >= MAX_TURNS - 1) && turnPlayer == BLACK) || winner != Board.NOBODY;
     }
 
-    private boolean checkVerticalWin(int player) {
-        return checkWinRange(player, 0, 2, 0, BOARD_SIZE, getNextVertical);
-    }
-
-    private boolean checkHorizontalWin(int player) {
-        return checkWinRange(player, 0, BOARD_SIZE, 0, 2, getNextHorizontal);
-    }
-
-    private boolean checkDiagRightWin(int player) {
-        return checkWinRange(player, 0, 2, 0, 2, getNextDiagRight);
-    }
-
-    private boolean checkDiagLeftWin(int player) {
-        return checkWinRange(player, 0 ,2, BOARD_SIZE - 2, BOARD_SIZE, getNextDiagLeft);
-    }
-
-    private boolean checkWinRange(int player, int xStart, int xEnd, int yStart, int yEnd, UnaryOperator<PentagoCoord> direction) {
-        boolean win = false;
-        for (int i = xStart; i < xEnd; i++) {
-            for (int j = yStart; j < yEnd; j++) {
-                win |= checkWin(player, new PentagoCoord(i, j), direction);
-                if (win) { return true; }
-            }
-        }
-        return false;
-    }
-
-    private boolean checkWin(int player, PentagoCoord start, UnaryOperator<PentagoCoord> direction) {
-        int winCounter = 0;
-        Piece currColour = player == 0 ? Piece.WHITE : Piece.BLACK;
-        PentagoCoord current = start;
-        while(true) {
-            try {
-                if (currColour == this.board[current.getX()][current.getY()]) {
-                    winCounter++;
-                    current = direction.apply(current);
-                } else {
-                    break;
-                }
-            } catch (IllegalArgumentException e) { //We have run off the board
-                break;
-            }
-        }
-        return winCounter >= 5;
-    }
-
     public void printBoard() {
         System.out.println(this.toString());
     }
@@ -338,7 +537,7 @@ public class PentagoBoardState extends BoardState {
             boardString.append("|");
             for (int j = 0; j < BOARD_SIZE; j++) {
                 boardString.append(" ");
-                boardString.append(board[i][j].toString());
+                boardString.append(pieceAt(i, j).toString());
                 boardString.append(" |");
                 if (j == QUAD_SIZE - 1) {
                     boardString.append("|");
@@ -6,6 +6,12 @@ import boardgame.Move;
  * @author mgrenander
  */
 public class PentagoMove extends Move {
+    // Packed int layout: cell x * BOARD_SIZE + y (bits 0-5), quadrant (6-7), swap (8), player (9)
+    private static final int CELL_BITS = 63;
+    private static final int QUAD_SHIFT = 6;
+    private static final int SWAP_SHIFT = 8;
+    private static final int PLAYER_SHIFT = 9;
+
     private int playerId;
     private int xMove;
     private int yMove;
@@ -40,9 +46,36 @@ public class PentagoMove extends Move {
         }
     }
 
+    /**
+     * Encodes a move as an int, for search code that should not allocate move objects.
+     * The player must be WHITE or BLACK and the other fields in range.
+     */
+    public static int pack(int x, int y, int aSwap, int bSwap, int playerId) {
+        return (x * PentagoBoardState.BOARD_SIZE + y) | aSwap << QUAD_SHIFT | bSwap << SWAP_SHIFT | playerId << PLAYER_SHIFT;
+    }
+
+    public static PentagoMove unpack(int move) {
+        return new PentagoMove(packedX(move), packedY(move), packedASwap(move), packedBSwap(move), packedPlayerID(move));
+    }
+
+    public static int packedCell(int move) { return move & CELL_BITS; }
+    public static int packedX(int move) { return packedCell(move) / PentagoBoardState.BOARD_SIZE; }
+    public static int packedY(int move) { return packedCell(move) % PentagoBoardState.BOARD_SIZE; }
+    public static int packedASwap(int move) { return (move >>> QUAD_SHIFT) & 3; }
+    public static int packedBSwap(int move) { return (move >>> SWAP_SHIFT) & 1; }
+    public static int packedPlayerID(int move) { return (move >>> PLAYER_SHIFT) & 1; }
+
+    public int pack() {
+        return pack(this.xMove, this.yMove, this.aSwap, this.bSwap, this.playerId);
+    }
+
     // Getters
     public PentagoCoord getMoveCoord() {
         return new PentagoCoord(this.xMove, this.yMove); }
+    public int getX() {
+        return this.xMove; }
+    public int getY() {
+        return this.yMove; }
     public int getASwap() {
         return this.aSwap; }
     public int getBSwap() {
@@ -0,0 +1,304 @@
+package pentago_twist;
+
+import boardgame.Board;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Perft-style move generation benchmark and validator.
+ *
+ * For every depth up to N it counts the move paths (every legal move sequence, like chess perft)
+ * and the distinct positions reached, and reports nodes per second. With -validate the fast
+ * packed-move/bitboard path is compared against the reference object API (getAllLegalMoves(),
+ * clone() and processMove()), so other representations or generators can be checked the same way.
+ *
+ * Usage: java -cp bin pentago_twist.PentagoPerft depth [-threads n] [-moves "x y a b,x y a b,..."]
+ *                                                      [-board 36 chars of w/b/.] [-distinct] [-validate]
+ */
+public class PentagoPerft {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            printUsage();
+            return;
+        }
+        int depth = Integer.parseInt(args[0]);
+        int threads = 1;
+        boolean distinct = false;
+        boolean validate = false;
+        PentagoBoardState start = new PentagoBoardState();
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-moves":
+                    start = fromMoves(args[++i]);
+                    break;
+                case "-board":
+                    start = fromBoard(args[++i]);
+                    break;
+                case "-distinct":
+                    distinct = true;
+                    break;
+                case "-validate":
+                    validate = true;
+                    break;
+                default:
+                    printUsage();
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        System.out.print(start);
+        System.out.println("Player to move: " + start.getTurnPlayer() + ", turn " + start.getTurnNumber());
+        for (int d = 1; d <= depth; d++) {
+            long begin = System.nanoTime();
+            long paths = threads > 1 ? perftParallel(start, d, threads) : perft(start, d);
+            report("paths", d, paths, System.nanoTime() - begin);
+
+            if (distinct || validate) {
+                begin = System.nanoTime();
+                long positions = countDistinct(start, d);
+                report("distinct", d, positions, System.nanoTime() - begin);
+            }
+
+            if (validate) {
+                begin = System.nanoTime();
+                long referencePaths = referencePerft(start, d);
+                report("reference paths", d, referencePaths, System.nanoTime() - begin);
+                long referencePositions = referenceDistinct(start, d);
+                if (referencePaths != paths || referencePositions != countDistinct(start, d)) {
+                    throw new IllegalStateException("Perft mismatch at depth " + d);
+                }
+                System.out.println("depth " + d + ": reference counts match");
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: java pentago_twist.PentagoPerft depth [-threads n] [-moves \"x y a b,...\"]\n"
+                + "        [-board 36 chars of w/b/. row by row] [-distinct] [-validate]\n"
+                + "  -distinct also counts distinct positions per depth (breadth first, memory bound)\n"
+                + "  -validate compares both counts against the reference object API");
+    }
+
+    private static void report(String what, int depth, long count, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format("depth %d: %s %d in %.3fs (%.0f nodes/s)",
+                depth, what, count, seconds, count / Math.max(seconds, 1e-9)));
+    }
+
+    /**
+     * Plays the given moves (in PentagoMove transport format without the player) from the initial position.
+     */
+    static PentagoBoardState fromMoves(String moves) {
+        PentagoBoardState state = new PentagoBoardState();
+        for (String move : moves.split(",")) {
+            if (move.trim().isEmpty()) { continue; }
+            state.processMove(new PentagoMove(move.trim() + " " + state.getTurnPlayer()));
+        }
+        return state;
+    }
+
+    /**
+     * Builds a position from 36 cells (w, b or .) row by row. The player to move and the turn number
+     * follow from the piece counts, as in a game where white moved first.
+     */
+    static PentagoBoardState fromBoard(String cells) {
+        if (cells.length() != PentagoBitboard.NUM_CELLS) {
+            throw new IllegalArgumentException("Board must have " + PentagoBitboard.NUM_CELLS + " cells");
+        }
+        long white = 0;
+        long black = 0;
+        for (int i = 0; i < cells.length(); i++) {
+            char c = Character.toLowerCase(cells.charAt(i));
+            if (c == 'w') { white |= 1L << i; }
+            else if (c == 'b') { black |= 1L << i; }
+            else if (c != '.') { throw new IllegalArgumentException("Unknown cell: " + c); }
+        }
+        int whiteCount = Long.bitCount(white);
+        int blackCount = Long.bitCount(black);
+        if (whiteCount != blackCount && whiteCount != blackCount + 1) {
+            throw new IllegalArgumentException("Piece counts cannot come from a game");
+        }
+        if (PentagoBitboard.hasFive(white) || PentagoBitboard.hasFive(black)) {
+            throw new IllegalArgumentException("Position is already decided");
+        }
+        int turnPlayer = whiteCount == blackCount ? PentagoBoardState.WHITE : PentagoBoardState.BLACK;
+        return new PentagoBoardState(white, black, turnPlayer, blackCount, Board.NOBODY);
+    }
+
+    /**
+     * Counts move paths of the given length with the packed generator and make/unmake.
+     */
+    public static long perft(PentagoBoardState state, int depth) {
+        PentagoBoardState search = (PentagoBoardState) state.clone();
+        return perft(search, depth, new int[depth + 1][PentagoBoardState.MAX_LEGAL_MOVES]);
+    }
+
+    private static long perft(PentagoBoardState state, int depth, int[][] buffers) {
+        if (depth == 0) { return 1; }
+        if (state.gameOver()) { return 0; }
+        int[] moves = buffers[depth];
+        int count = state.getAllLegalMoves(moves);
+        if (depth == 1) { return count; }
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            long undo = state.applyMove(moves[i]);
+            total += perft(state, depth - 1, buffers);
+            state.undoMove(undo);
+        }
+        return total;
+    }
+
+    /**
+     * perft with the root moves split over a thread pool, each thread walking its own copy.
+     */
+    public static long perftParallel(PentagoBoardState state, int depth, int threads) throws Exception {
+        if (depth <= 1 || state.gameOver()) { return perft(state, depth); }
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int count = state.getAllLegalMoves(moves);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final int move = moves[i];
+                results.add(pool.submit(() -> {
+                    PentagoBoardState child = (PentagoBoardState) state.clone();
+                    child.applyMove(move);
+                    return perft(child, depth - 1);
+                }));
+            }
+            long total = 0;
+            for (Future<Long> result : results) { total += result.get(); }
+            return total;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Counts distinct positions after exactly depth moves, expanding each distinct position of a
+     * level once with getDistinctSuccessors.
+     */
+    public static long countDistinct(PentagoBoardState state, int depth) {
+        MaskSet level = new MaskSet(16);
+        level.add(state.getWhiteMask(), state.getBlackMask());
+        int turnPlayer = state.getTurnPlayer();
+        int turnNumber = state.getTurnNumber();
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        for (int d = 0; d < depth; d++) {
+            MaskSet next = new MaskSet(level.size() * 4);
+            for (int i = 0; i < level.capacity(); i++) {
+                if (!level.used(i)) { continue; }
+                long white = level.white(i);
+                long black = level.black(i);
+                PentagoBoardState position = new PentagoBoardState(white, black, turnPlayer, turnNumber, Board.NOBODY);
+                if (position.gameOver() || PentagoBitboard.hasFive(white) || PentagoBitboard.hasFive(black)) { continue; }
+                int count = position.getDistinctSuccessors(moves);
+                for (int j = 0; j < count; j++) {
+                    long undo = position.applyMove(moves[j]);
+                    next.add(position.getWhiteMask(), position.getBlackMask());
+                    position.undoMove(undo);
+                }
+            }
+            if (turnPlayer != PentagoBoardState.WHITE) { turnNumber++; }
+            turnPlayer = 1 - turnPlayer;
+            level = next;
+        }
+        return level.size();
+    }
+
+    /**
+     * perft through the object API: list of PentagoMove, clone() and processMove().
+     */
+    public static long referencePerft(PentagoBoardState state, int depth) {
+        if (depth == 0) { return 1; }
+        if (state.gameOver()) { return 0; }
+        long total = 0;
+        for (PentagoMove move : state.getAllLegalMoves()) {
+            PentagoBoardState child = (PentagoBoardState) state.clone();
+            child.processMove(move);
+            total += referencePerft(child, depth - 1);
+        }
+        return total;
+    }
+
+    /**
+     * Distinct positions through the object API, deduplicated with equals()/hashCode().
+     */
+    public static long referenceDistinct(PentagoBoardState state, int depth) {
+        HashSet<PentagoBoardState> level = new HashSet<>();
+        level.add(state);
+        for (int d = 0; d < depth; d++) {
+            HashSet<PentagoBoardState> next = new HashSet<>();
+            for (PentagoBoardState position : level) {
+                if (position.gameOver()) { continue; }
+                for (PentagoMove move : position.getAllLegalMoves()) {
+                    PentagoBoardState child = (PentagoBoardState) position.clone();
+                    child.processMove(move);
+                    next.add(child);
+                }
+            }
+            level = next;
+        }
+        return level.size();
+    }
+
+    /**
+     * Growable open-addressing set of (white, black) mask pairs.
+     */
+    private static class MaskSet {
+        private long[] whites;
+        private long[] blacks;
+        private boolean[] used;
+        private int size;
+
+        MaskSet(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+            whites = new long[capacity];
+            blacks = new long[capacity];
+            used = new boolean[capacity];
+        }
+
+        int size() { return size; }
+        int capacity() { return used.length; }
+        boolean used(int slot) { return used[slot]; }
+        long white(int slot) { return whites[slot]; }
+        long black(int slot) { return blacks[slot]; }
+
+        void add(long white, long black) {
+            if (2 * (size + 1) > used.length) { grow(); }
+            int mask = used.length - 1;
+            long hash = (white * 0x9E3779B97F4A7C15L) ^ (black * 0xC2B2AE3D27D4EB4FL);
+            int slot = (int) (hash ^ (hash >>> 29)) & mask;
+            while (used[slot]) {
+                if (whites[slot] == white && blacks[slot] == black) { return; }
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            whites[slot] = white;
+            blacks[slot] = black;
+            size++;
+        }
+
+        private void grow() {
+            long[] oldWhites = whites;
+            long[] oldBlacks = blacks;
+            boolean[] oldUsed = used;
+            whites = new long[oldUsed.length * 2];
+            blacks = new long[oldUsed.length * 2];
+            used = new boolean[oldUsed.length * 2];
+            size = 0;
+            for (int i = 0; i < oldUsed.length; i++) {
+                if (oldUsed[i]) { add(oldWhites[i], oldBlacks[i]); }
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package pentago_twist;
+
+import boardgame.Board;
+
+/**
+ * Uniformly random playouts played directly on two colour masks.
+ *
+ * A playout never touches a PentagoBoardState after reading it: no undo tokens, no hash updates,
+ * no allocation. Every legal move is equally likely, as with picking from getAllLegalMoves(),
+ * since each empty cell has the same 8 twists; one random draw picks both the cell and the twist.
+ * The result is what PentagoBoardState.getWinner() would report at the end of the same game.
+ *
+ * Run main to compare playouts per second with the PentagoBoardState based loops.
+ */
+public final class PentagoPlayout {
+    private static final int TWISTS = 2 * PentagoBitboard.NUM_QUADS;
+
+    /** Result of a playout stopped at its ply limit with the game still on. */
+    public static final int CUT_OFF = -1;
+
+    private PentagoPlayout() {}
+
+    /**
+     * Plays a random game to the end from a state, using the calling thread's FastRandom.
+     * @return the winner: PentagoBoardState.WHITE, BLACK, Board.DRAW, or Board.NOBODY if the turns ran out
+     */
+    public static int play(PentagoBoardState state) {
+        return play(state, FastRandom.current());
+    }
+
+    /**
+     * Plays a random game to the end from a state, which is left untouched.
+     * @return the winner: PentagoBoardState.WHITE, BLACK, Board.DRAW, or Board.NOBODY if the turns ran out
+     */
+    public static int play(PentagoBoardState state, FastRandom rand) {
+        return play(state, rand, null);
+    }
+
+    /**
+     * Plays a random game to the end from a state, which is left untouched, and reports where each
+     * colour placed its marbles: bit i of placements[colour] is set if that colour placed on cell i
+     * (before the twist) at least once. This is what all-moves-as-first statistics need.
+     * @param placements: array of two masks, indexed by colour, overwritten; or null
+     * @return the winner: PentagoBoardState.WHITE, BLACK, Board.DRAW, or Board.NOBODY if the turns ran out
+     */
+    public static int play(PentagoBoardState state, FastRandom rand, long[] placements) {
+        return play(state, rand, placements, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Plays a random game from a state, which is left untouched, for at most a number of plies,
+     * and reports the placements as play(state, rand, placements) does and where it stopped.
+     * @param placements: array of two masks, indexed by colour, overwritten; or null
+     * @param maxPlies: positive limit on the plies played
+     * @param end: array of two masks, indexed by colour, overwritten with the final position; or null
+     * @return the winner as play(state, rand) returns it, or CUT_OFF if the game was still on after maxPlies plies
+     */
+    public static int play(PentagoBoardState state, FastRandom rand, long[] placements, int maxPlies, long[] end) {
+        long whitePlaced = 0;
+        long blackPlaced = 0;
+        long white = state.getWhiteMask();
+        long black = state.getBlackMask();
+        int winner = state.getWinner();
+        if (!state.gameOver()) {
+            int turnPlayer = state.getTurnPlayer();
+            int turnNumber = state.getTurnNumber();
+
+            while (true) {
+                long empty = ~(white | black) & PentagoBitboard.FULL;
+                int pick = rand.nextInt(Long.bitCount(empty) * TWISTS);
+                for (int skip = pick / TWISTS; skip > 0; skip--) {
+                    empty &= empty - 1;
+                }
+                long placed = empty & -empty;
+                int twist = pick % TWISTS;
+                int quad = twist >> 1;
+                int swap = twist & 1;
+
+                if (turnPlayer == PentagoBoardState.WHITE) {
+                    white |= placed;
+                    whitePlaced |= placed;
+                } else {
+                    black |= placed;
+                    blackPlaced |= placed;
+                }
+                white = PentagoBitboard.twist(white, quad, swap);
+                black = PentagoBitboard.twist(black, quad, swap);
+
+                // Same rules as PentagoBoardState.updateWinner.
+                boolean whiteWin = PentagoBitboard.hasFive(white);
+                boolean blackWin = PentagoBitboard.hasFive(black);
+                if (whiteWin && blackWin) { winner = Board.DRAW; break; }
+                if (whiteWin) { winner = PentagoBoardState.WHITE; break; }
+                if (blackWin) { winner = PentagoBoardState.BLACK; break; }
+
+                if (turnPlayer != PentagoBoardState.WHITE) { turnNumber++; }
+                turnPlayer = 1 - turnPlayer;
+                if (turnNumber >= PentagoBoardState.MAX_TURNS - 1 && turnPlayer == PentagoBoardState.BLACK) {
+                    winner = Board.NOBODY; // As in PentagoBoardState, the last move is checked before the turn ends
+                    break;
+                }
+                if (--maxPlies == 0) { winner = CUT_OFF; break; }
+            }
+        }
+        if (placements != null) {
+            placements[PentagoBoardState.WHITE] = whitePlaced;
+            placements[PentagoBoardState.BLACK] = blackPlaced;
+        }
+        if (end != null) {
+            end[PentagoBoardState.WHITE] = white;
+            end[PentagoBoardState.BLACK] = black;
+        }
+        return winner;
+    }
+
+    /**
+     * Measures playouts per second from the initial position: the object API (clone, getRandomMove,
+     * processMove), the packed make/unmake loop the search engines used before, and this kernel.
+     * Usage: java -cp bin pentago_twist.PentagoPlayout [seconds per measurement]
+     */
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+        PentagoBoardState start = new PentagoBoardState();
+
+        // Warm up every loop before measuring.
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+            double measure = report ? seconds : seconds / 3;
+            double objects = measure(measure, () -> playObjects(start));
+            int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+            long[] undo = new long[2 * PentagoBoardState.MAX_TURNS];
+            java.util.Random random = new java.util.Random(2019);
+            PentagoBoardState scratch = (PentagoBoardState) start.clone();
+            double packed = measure(measure, () -> playPacked(scratch, moves, undo, random));
+            FastRandom rand = new FastRandom(2019);
+            double kernel = measure(measure, () -> play(start, rand));
+            if (report) {
+                System.out.println(String.format("Object API:        %10.0f playouts/s", objects));
+                System.out.println(String.format("Packed make/unmake: %9.0f playouts/s", packed));
+                System.out.println(String.format("Playout kernel:    %10.0f playouts/s (%.1fx packed, %.1fx objects)",
+                        kernel, kernel / packed, kernel / objects));
+            }
+        }
+    }
+
+    private static double measure(double seconds, java.util.function.IntSupplier playout) {
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        long begin = System.nanoTime();
+        long count = 0;
+        int sink = 0;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++) { sink += playout.getAsInt(); }
+            count += 100;
+        }
+        if (sink == 42) { System.out.print(""); } // Keep the results alive
+        return count / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private static int playObjects(PentagoBoardState start) {
+        PentagoBoardState state = (PentagoBoardState) start.clone();
+        while (!state.gameOver()) {
+            state.processMove((PentagoMove) state.getRandomMove());
+        }
+        return state.getWinner();
+    }
+
+    private static int playPacked(PentagoBoardState state, int[] moves, long[] undo, java.util.Random random) {
+        int plies = 0;
+        while (!state.gameOver()) {
+            undo[plies++] = state.applyMove(moves[random.nextInt(state.getAllLegalMoves(moves))]);
+        }
+        int winner = state.getWinner();
+        while (plies > 0) { state.undoMove(undo[--plies]); }
+        return winner;
+    }
+}
@@ -0,0 +1,47 @@
+package pentago_twist;
+
+import java.util.Arrays;
+
+/**
+ * Small open-addressing set of positions, keyed by Zobrist hash and compared on the exact masks.
+ * Used to drop duplicate successors without building states; clear() is O(1).
+ */
+class PentagoPositionSet {
+    private final long[] hashes;
+    private final long[] whites;
+    private final long[] blacks;
+    private final int[] stamps;
+    private int stamp = 1;
+
+    PentagoPositionSet(int capacity) {
+        int size = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        hashes = new long[size];
+        whites = new long[size];
+        blacks = new long[size];
+        stamps = new int[size];
+    }
+
+    void clear() {
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * @return true if the position was not in the set yet
+     */
+    boolean add(long hash, long white, long black) {
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (stamps[slot] == stamp) {
+            if (hashes[slot] == hash && whites[slot] == white && blacks[slot] == black) { return false; }
+            slot = (slot + 1) & mask;
+        }
+        stamps[slot] = stamp;
+        hashes[slot] = hash;
+        whites[slot] = white;
+        blacks[slot] = black;
+        return true;
+    }
+}
@@ -0,0 +1,530 @@
+package pentago_twist;
+
+import pentago_twist.PentagoBoardState.Piece;
+
+/**
+ * Exhaustive consistency checks for the bitboard tables used by PentagoBoardState.
+ * Run with: java -cp bin pentago_twist.PentagoSelfCheck
+ */
+public class PentagoSelfCheck {
+    private static final int BOARD_SIZE = PentagoBoardState.BOARD_SIZE;
+    private static final int QUAD_SIZE = 3;
+    private static final int NUM_QUADS = 4;
+
+    public static void main(String[] args) {
+        checkTwistTables();
+        checkWinLines();
+        checkMakeUnmake();
+        checkPackedMoves();
+        checkDistinctSuccessors();
+        checkZobrist();
+        checkSymmetries();
+        checkImmediateWins();
+        checkPlayouts();
+        checkHeavyPlayouts();
+        System.out.println("All checks passed.");
+    }
+
+    /**
+     * Compares the twist tables with the original Piece[][] rotate/flip code, for every colouring
+     * of every quadrant, with the other quadrants filled by a fixed pseudo-random pattern.
+     */
+    static void checkTwistTables() {
+        int colourings = 1;
+        for (int i = 0; i < QUAD_SIZE * QUAD_SIZE; i++) { colourings *= 3; }
+
+        long seed = 2019;
+        int checked = 0;
+        for (int a = 0; a < NUM_QUADS; a++) {
+            for (int b = 0; b < 2; b++) {
+                for (int colouring = 0; colouring < colourings; colouring++) {
+                    // Random background outside the quadrant, then the enumerated quadrant content
+                    seed = seed * 6364136223846793005L + 1442695040888963407L;
+                    long white = (seed >>> 7) & PentagoBitboard.FULL & ~PentagoBitboard.QUAD_MASK[a];
+                    long black = (seed >>> 23) & PentagoBitboard.FULL & ~PentagoBitboard.QUAD_MASK[a] & ~white;
+                    int rest = colouring;
+                    for (int r = 0; r < QUAD_SIZE; r++) {
+                        for (int c = 0; c < QUAD_SIZE; c++) {
+                            long bit = PentagoBitboard.bit(PentagoBitboard.QUAD_ROW[a] + r, PentagoBitboard.QUAD_COL[a] + c);
+                            if (rest % 3 == 1) { white |= bit; }
+                            if (rest % 3 == 2) { black |= bit; }
+                            rest /= 3;
+                        }
+                    }
+
+                    Piece[][] expected = referenceTwist(toPieces(white, black), a, b);
+                    Piece[][] actual = toPieces(PentagoBitboard.twist(white, a, b), PentagoBitboard.twist(black, a, b));
+                    for (int x = 0; x < BOARD_SIZE; x++) {
+                        for (int y = 0; y < BOARD_SIZE; y++) {
+                            if (expected[x][y] != actual[x][y]) {
+                                throw new IllegalStateException("Twist table mismatch: quadrant " + a + ", swap " + b
+                                        + ", cell (" + x + ", " + y + ")");
+                            }
+                        }
+                    }
+                    checked++;
+                }
+            }
+        }
+        System.out.println("Twist tables: " + checked + " quadrant colourings match.");
+    }
+
+    /**
+     * Compares the five-in-a-row masks with the original coordinate walk, on every line with each
+     * single cell removed and on a large sample of random masks.
+     */
+    static void checkWinLines() {
+        int checked = 0;
+        for (long line : PentagoBitboard.WIN_LINES) {
+            checkWinLine(line);
+            for (int i = 0; i < PentagoBitboard.NUM_CELLS; i++) {
+                if ((line & (1L << i)) != 0) { checkWinLine(line & ~(1L << i)); }
+            }
+            checked += 6;
+        }
+        long seed = 2019;
+        for (int n = 0; n < 1000000; n++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            long mask = seed >>> 11;
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            // Alternate between dense and sparse masks so both outcomes are well covered
+            mask = n % 2 == 0 ? mask | (seed >>> 7) : mask & (seed >>> 7);
+            checkWinLine(mask & PentagoBitboard.FULL);
+            checked++;
+        }
+        System.out.println("Win lines: " + checked + " masks match.");
+    }
+
+    private static void checkWinLine(long mask) {
+        boolean expected = referenceWin(mask, 0, 2, 0, BOARD_SIZE, 1, 0)
+                || referenceWin(mask, 0, BOARD_SIZE, 0, 2, 0, 1)
+                || referenceWin(mask, 0, 2, 0, 2, 1, 1)
+                || referenceWin(mask, 0, 2, BOARD_SIZE - 2, BOARD_SIZE, 1, -1);
+        if (PentagoBitboard.hasFive(mask) != expected) {
+            throw new IllegalStateException("Win line mismatch for mask " + Long.toBinaryString(mask));
+        }
+    }
+
+    /**
+     * The start ranges and directions of the original checkWinRange/checkWin.
+     */
+    private static boolean referenceWin(long mask, int xStart, int xEnd, int yStart, int yEnd, int dx, int dy) {
+        for (int i = xStart; i < xEnd; i++) {
+            for (int j = yStart; j < yEnd; j++) {
+                int count = 0;
+                int x = i;
+                int y = j;
+                while (x >= 0 && x < BOARD_SIZE && y >= 0 && y < BOARD_SIZE && (mask & PentagoBitboard.bit(x, y)) != 0) {
+                    count++;
+                    x += dx;
+                    y += dy;
+                }
+                if (count >= 5) { return true; }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Plays random games and, at every position, applies and undoes every legal move. The undone state
+     * must match the original and the applied state must match clone() + processMove().
+     */
+    static void checkMakeUnmake() {
+        java.util.Random rand = new java.util.Random(2019);
+        int checked = 0;
+        for (int game = 0; game < 300; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                String before = describe(state);
+                java.util.ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+                for (PentagoMove move : moves) {
+                    PentagoBoardState expected = (PentagoBoardState) state.clone();
+                    expected.processMove(move);
+                    long undo = state.applyMove(move);
+                    if (!describe(state).equals(describe(expected))) {
+                        throw new IllegalStateException("applyMove differs from processMove: " + move.toPrettyString());
+                    }
+                    state.undoMove(undo);
+                    if (!describe(state).equals(before)) {
+                        throw new IllegalStateException("undoMove did not restore the state: " + move.toPrettyString());
+                    }
+                    checked++;
+                }
+                state.applyMove(moves.get(rand.nextInt(moves.size())));
+            }
+        }
+        System.out.println("Make/unmake: " + checked + " moves restored.");
+    }
+
+    /**
+     * The packed move generator must list the same moves in the same order as getAllLegalMoves(),
+     * and packing must round-trip through PentagoMove.
+     */
+    static void checkPackedMoves() {
+        java.util.Random rand = new java.util.Random(2019);
+        int[] buffer = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int checked = 0;
+        for (int game = 0; game < 2000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                java.util.ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+                int count = state.getAllLegalMoves(buffer);
+                if (count != moves.size()) { throw new IllegalStateException("Packed move count differs"); }
+                for (int i = 0; i < count; i++) {
+                    if (!PentagoMove.unpack(buffer[i]).toTransportable().equals(moves.get(i).toTransportable())
+                            || moves.get(i).pack() != buffer[i]) {
+                        throw new IllegalStateException("Packed move differs: " + moves.get(i).toPrettyString());
+                    }
+                    checked++;
+                }
+                int pick = rand.nextInt(count);
+                PentagoBoardState expected = (PentagoBoardState) state.clone();
+                expected.processMove(moves.get(pick));
+                state.applyMove(buffer[pick]);
+                if (!expected.equals(state)) { throw new IllegalStateException("applyMove(int) differs from processMove"); }
+            }
+        }
+        System.out.println("Packed moves: " + checked + " moves match.");
+    }
+
+    /**
+     * getDistinctSuccessors must reach exactly the set of positions reachable with getAllLegalMoves,
+     * without repeating any of them.
+     */
+    static void checkDistinctSuccessors() {
+        java.util.Random rand = new java.util.Random(2019);
+        int[] buffer = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        long all = 0;
+        long distinct = 0;
+        for (int game = 0; game < 1000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                java.util.HashSet<PentagoBoardState> expected = new java.util.HashSet<>();
+                java.util.ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+                for (PentagoMove move : moves) {
+                    PentagoBoardState next = (PentagoBoardState) state.clone();
+                    next.processMove(move);
+                    expected.add(next);
+                }
+                java.util.HashSet<PentagoBoardState> actual = new java.util.HashSet<>();
+                int count = state.getDistinctSuccessors(buffer);
+                for (int i = 0; i < count; i++) {
+                    PentagoBoardState next = (PentagoBoardState) state.clone();
+                    next.processMove(PentagoMove.unpack(buffer[i]));
+                    if (!actual.add(next)) { throw new IllegalStateException("Duplicate successor emitted"); }
+                }
+                if (!actual.equals(expected)) { throw new IllegalStateException("Successor sets differ"); }
+                all += moves.size();
+                distinct += count;
+                state.processMove(moves.get(rand.nextInt(moves.size())));
+            }
+        }
+        System.out.println("Distinct successors: " + distinct + " of " + all + " moves kept, sets match.");
+    }
+
+    /**
+     * Follows random games and checks that the incrementally updated hash always equals the hash
+     * recomputed from the pieces, also after undoing moves, and that equal states hash equally.
+     */
+    static void checkZobrist() {
+        java.util.Random rand = new java.util.Random(2019);
+        java.util.HashMap<Long, String> seen = new java.util.HashMap<>();
+        int checked = 0;
+        for (int game = 0; game < 2000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                java.util.ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+                PentagoMove move = moves.get(rand.nextInt(moves.size()));
+                long undo = state.applyMove(move);
+                checkHash(state);
+                state.undoMove(undo);
+                checkHash(state);
+                PentagoBoardState copy = (PentagoBoardState) state.clone();
+                copy.processMove(move);
+                state.applyMove(move);
+                if (!copy.equals(state) || copy.hashCode() != state.hashCode()) {
+                    throw new IllegalStateException("Equal states differ in equals/hashCode");
+                }
+                String previous = seen.put(state.zobrist(), describe(state));
+                if (previous != null && !previous.equals(describe(state))) {
+                    throw new IllegalStateException("Zobrist collision between different positions");
+                }
+                checked++;
+            }
+        }
+        System.out.println("Zobrist: " + checked + " positions hashed consistently.");
+    }
+
+    /**
+     * For every valid symmetry, playing a move and then transforming must give the same state as
+     * transforming and then playing the transformed move, along random games. Equivalent positions
+     * must share their canonical key.
+     */
+    static void checkSymmetries() {
+        StringBuilder valid = new StringBuilder();
+        for (int sym : PentagoSymmetry.getValidSymmetries()) { valid.append(' ').append(sym); }
+        System.out.println("Symmetries preserving the move set:" + valid);
+
+        java.util.Random rand = new java.util.Random(2019);
+        int checked = 0;
+        for (int game = 0; game < 200; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                java.util.ArrayList<PentagoMove> moves = state.getAllLegalMoves();
+                for (int sym : PentagoSymmetry.getValidSymmetries()) {
+                    PentagoBoardState image = PentagoSymmetry.transform(state, sym);
+                    if (PentagoSymmetry.canonicalZobrist(image) != PentagoSymmetry.canonicalZobrist(state)) {
+                        throw new IllegalStateException("Equivalent positions have different canonical keys");
+                    }
+                    for (PentagoMove move : moves) {
+                        PentagoBoardState played = (PentagoBoardState) state.clone();
+                        played.processMove(move);
+                        PentagoBoardState imagePlayed = (PentagoBoardState) image.clone();
+                        imagePlayed.processMove(PentagoSymmetry.transformMove(move, sym));
+                        if (!PentagoSymmetry.transform(played, sym).equals(imagePlayed)) {
+                            throw new IllegalStateException("Symmetry " + sym + " does not commute with " + move.toPrettyString());
+                        }
+                        checked++;
+                    }
+                }
+                state.processMove(moves.get(rand.nextInt(moves.size())));
+            }
+        }
+        System.out.println("Symmetries: " + checked + " moves commute.");
+    }
+
+    /**
+     * Follows random games and compares getWinningMoves, hasWinningMove, getMovesAllowingWin and
+     * getSafeMoves with trial play of every move and every reply.
+     */
+    static void checkImmediateWins() {
+        java.util.Random rand = new java.util.Random(2019);
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int[] replies = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int[] buffer = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int winning = 0;
+        int allowing = 0;
+        int positions = 0;
+        for (int game = 0; game < 100; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                int player = state.getTurnPlayer();
+                java.util.Set<Integer> expectedWins = new java.util.HashSet<>();
+                java.util.Set<Integer> expectedAllowing = new java.util.HashSet<>();
+                int count = state.getAllLegalMoves(moves);
+                for (int i = 0; i < count; i++) {
+                    long undo = state.applyMove(moves[i]);
+                    if (state.getWinner() == player) { expectedWins.add(moves[i]); }
+                    if (!state.gameOver()) {
+                        int replyCount = state.getAllLegalMoves(replies);
+                        for (int j = 0; j < replyCount; j++) {
+                            long replyUndo = state.applyMove(replies[j]);
+                            boolean lost = state.getWinner() == 1 - player;
+                            state.undoMove(replyUndo);
+                            if (lost) {
+                                expectedAllowing.add(moves[i]);
+                                break;
+                            }
+                        }
+                    }
+                    state.undoMove(undo);
+                }
+
+                if (!expectedWins.equals(toSet(buffer, state.getWinningMoves(buffer)))
+                        || state.hasWinningMove() != !expectedWins.isEmpty()) {
+                    throw new IllegalStateException("Winning moves differ in\n" + describe(state));
+                }
+                if (!expectedAllowing.equals(toSet(buffer, state.getMovesAllowingWin(buffer)))) {
+                    throw new IllegalStateException("Moves allowing a win differ in\n" + describe(state));
+                }
+                java.util.Set<Integer> safe = toSet(buffer, state.getSafeMoves(buffer));
+                if (safe.size() + expectedAllowing.size() != count || safe.removeAll(expectedAllowing)) {
+                    throw new IllegalStateException("Safe moves differ in\n" + describe(state));
+                }
+                winning += expectedWins.size();
+                allowing += expectedAllowing.size();
+                positions++;
+                state.applyMove(moves[rand.nextInt(count)]);
+            }
+        }
+        System.out.println("Immediate wins: " + positions + " positions, " + winning + " winning and "
+                + allowing + " moves allowing a win match.");
+    }
+
+    /**
+     * Replays the random choices of PentagoPlayout with getAllLegalMoves() and applyMove(), which
+     * list the same 8 twists per empty cell in the same order, and compares the winners and placements,
+     * and the position where the same playout cut off after fewer plies stops.
+     */
+    static void checkPlayouts() {
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int[] winners = new int[3];
+        int games = 100000;
+        for (int game = 0; game < games; game++) {
+            FastRandom kernelRandom = new FastRandom(game);
+            FastRandom replayRandom = new FastRandom(game);
+            PentagoBoardState state = new PentagoBoardState();
+            long[] placements = new long[2];
+            int expected = PentagoPlayout.play(state, kernelRandom, placements);
+            int cutoff = 1 + game % (2 * PentagoBoardState.MAX_TURNS);
+            long[] end = new long[2];
+            int cutResult = PentagoPlayout.play(state, new FastRandom(game), null, cutoff, end);
+            long[] placed = new long[2];
+            for (int ply = 1; !state.gameOver(); ply++) {
+                int count = state.getAllLegalMoves(moves);
+                int move = moves[replayRandom.nextInt(count)];
+                placed[state.getTurnPlayer()] |= 1L << PentagoMove.packedCell(move);
+                state.applyMove(move);
+                if (ply == cutoff && (end[0] != state.getWhiteMask() || end[1] != state.getBlackMask()
+                        || cutResult != (state.gameOver() ? expected : PentagoPlayout.CUT_OFF))) {
+                    throw new IllegalStateException("Playout " + game + " cut off after " + cutoff + " plies differs from\n" + describe(state));
+                }
+            }
+            if (state.getWinner() != expected) {
+                throw new IllegalStateException("Playout " + game + " ends with " + expected + " instead of\n" + describe(state));
+            }
+            if (placed[0] != placements[0] || placed[1] != placements[1]) {
+                throw new IllegalStateException("Playout " + game + " reports the wrong placements");
+            }
+            winners[expected == boardgame.Board.NOBODY || expected == boardgame.Board.DRAW ? 2 : expected]++;
+        }
+        System.out.println("Playouts: " + games + " replayed, white " + winners[0] + ", black " + winners[1]
+                + ", no winner " + winners[2] + ".");
+    }
+
+    /**
+     * Follows random games and checks that a HeavyPlayout from a position with a winning move
+     * wins with its first move, and that one from any other position does not end in a win of
+     * the player to move on that move. Where the opponent could win next, the policy's move must
+     * be one of PentagoBoardState.getSafeMoves that does not lose at once, if there is any.
+     */
+    static void checkHeavyPlayouts() {
+        java.util.Random rand = new java.util.Random(2019);
+        FastRandom playoutRandom = new FastRandom(2019);
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        long[] placements = new long[2];
+        int[] safeMoves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int wins = 0;
+        int blocks = 0;
+        int positions = 0;
+        for (int game = 0; game < 20000; game++) {
+            PentagoBoardState state = new PentagoBoardState();
+            while (!state.gameOver()) {
+                int player = state.getTurnPlayer();
+                int winner = HeavyPlayout.play(state, playoutRandom, placements);
+                boolean firstMoveOnly = Long.bitCount(placements[player]) == 1 && placements[1 - player] == 0;
+                if (state.hasWinningMove() != (winner == player && firstMoveOnly)) {
+                    throw new IllegalStateException("Heavy playout ends with " + winner + " after "
+                            + Long.bitCount(placements[player]) + " moves from\n" + describe(state));
+                }
+                wins += winner == player && firstMoveOnly ? 1 : 0;
+
+                long mine = player == PentagoBoardState.WHITE ? state.getWhiteMask() : state.getBlackMask();
+                long opp = player == PentagoBoardState.WHITE ? state.getBlackMask() : state.getWhiteMask();
+                boolean lastMove = player == PentagoBoardState.WHITE && state.getTurnNumber() >= PentagoBoardState.MAX_TURNS - 1;
+                if (!lastMove && !state.hasWinningMove() && PentagoBitboard.hasWinningMove(opp, mine)) {
+                    // getSafeMoves also counts the moves that lose at once, by the twist.
+                    java.util.Set<Integer> safe = new java.util.HashSet<>();
+                    int safeCount = state.getSafeMoves(safeMoves);
+                    for (int i = 0; i < safeCount; i++) {
+                        long undo = state.applyMove(safeMoves[i]);
+                        if (state.getWinner() != 1 - player) { safe.add(safeMoves[i]); }
+                        state.undoMove(undo);
+                    }
+                    int chosen = HeavyPlayout.chooseMove(mine, opp, playoutRandom);
+                    int cell = chosen >> 3;
+                    int move = PentagoMove.pack(cell / BOARD_SIZE, cell % BOARD_SIZE, (chosen & 7) >> 1, chosen & 1, player);
+                    if (!safe.isEmpty() && !safe.contains(move)) {
+                        throw new IllegalStateException("Heavy playout plays " + PentagoMove.unpack(move).toPrettyString()
+                                + ", which lets the opponent win, from\n" + describe(state));
+                    }
+                    blocks += safe.isEmpty() ? 0 : 1;
+                }
+                positions++;
+                state.applyMove(moves[rand.nextInt(state.getAllLegalMoves(moves))]);
+            }
+        }
+        System.out.println("Heavy playouts: " + positions + " positions, " + wins + " immediate wins taken, "
+                + blocks + " threats blocked.");
+    }
+
+    private static java.util.Set<Integer> toSet(int[] buffer, int count) {
+        java.util.Set<Integer> set = new java.util.HashSet<>();
+        for (int i = 0; i < count; i++) {
+            if (!set.add(buffer[i])) { throw new IllegalStateException("Duplicate move emitted"); }
+        }
+        return set;
+    }
+
+    private static void checkHash(PentagoBoardState state) {
+        long white = 0;
+        long black = 0;
+        for (int x = 0; x < BOARD_SIZE; x++) {
+            for (int y = 0; y < BOARD_SIZE; y++) {
+                if (state.getPieceAt(x, y) == Piece.WHITE) { white |= PentagoBitboard.bit(x, y); }
+                if (state.getPieceAt(x, y) == Piece.BLACK) { black |= PentagoBitboard.bit(x, y); }
+            }
+        }
+        if (state.zobrist() != PentagoBitboard.zobrist(white, black, state.getTurnPlayer())) {
+            throw new IllegalStateException("Incremental Zobrist hash differs from recomputed hash");
+        }
+    }
+
+    private static String describe(PentagoBoardState state) {
+        return state.toString() + state.getTurnPlayer() + " " + state.getTurnNumber() + " " + state.getWinner();
+    }
+
+    private static Piece[][] toPieces(long white, long black) {
+        Piece[][] board = new Piece[BOARD_SIZE][BOARD_SIZE];
+        for (int x = 0; x < BOARD_SIZE; x++) {
+            for (int y = 0; y < BOARD_SIZE; y++) {
+                long bit = PentagoBitboard.bit(x, y);
+                board[x][y] = (white & bit) != 0 ? Piece.WHITE : (black & bit) != 0 ? Piece.BLACK : Piece.EMPTY;
+            }
+        }
+        return board;
+    }
+
+    /**
+     * The quadrant split, rotate/flip and rebuild of the original Piece[][] implementation.
+     */
+    private static Piece[][] referenceTwist(Piece[][] board, int a, int b) {
+        Piece[][][] quadrants = new Piece[NUM_QUADS][QUAD_SIZE][QUAD_SIZE];
+        for (int x = 0; x < BOARD_SIZE; x++) {
+            for (int y = 0; y < BOARD_SIZE; y++) {
+                quadrants[PentagoBitboard.quadrantOf(x, y)][x % QUAD_SIZE][y % QUAD_SIZE] = board[x][y];
+            }
+        }
+
+        Piece[][] tmp = quadrants[a];
+        Piece[][] tmp2 = new Piece[QUAD_SIZE][QUAD_SIZE];
+        int N = tmp.length;
+        switch (b) {
+            case 0:
+                for (int j = 0; j < N; j++) {
+                    for (int i = N - 1; i >= 0; i--) {
+                        System.arraycopy(tmp[i], j, tmp2[j], N - 1 - i, 1);
+                    }
+                }
+                break;
+            case 1:
+                for (int j = 0; j < N; j++) {
+                    for (int i = N - 1; i >= 0; i--) {
+                        System.arraycopy(tmp[j], i, tmp2[j], N - 1 - i, 1);
+                    }
+                }
+                break;
+        }
+        quadrants[a] = tmp2;
+
+        Piece[][] result = new Piece[BOARD_SIZE][BOARD_SIZE];
+        for (int i = 0; i < BOARD_SIZE; i++) {
+            int quadrantRow = i < 3 ? i : i - 3;
+            int leftQuad = i < 3 ? 0 : 2;
+            int rightQuad = i < 3 ? 1 : 3;
+            System.arraycopy(quadrants[leftQuad][quadrantRow], 0, result[i], 0, 3);
+            System.arraycopy(quadrants[rightQuad][quadrantRow], 0, result[i], 3, 3);
+        }
+        return result;
+    }
+}
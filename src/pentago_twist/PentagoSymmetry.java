@@ -0,0 +1,210 @@
+package pentago_twist;
+
+/**
+ * Board symmetries of Pentago-Twist and canonical position keys.
+ *
+ * The eight symmetries of the square all preserve the five-in-a-row lines, but a symmetry only
+ * maps the game onto itself if it also maps every legal twist onto a legal twist. Since a quadrant
+ * can only be rotated right or flipped horizontally, mirrors turn right rotations into left ones
+ * and quarter turns turn horizontal flips into vertical ones. The valid subset is not hard-coded:
+ * it is derived below by conjugating every twist with every symmetry, which leaves the identity
+ * and the half turn.
+ *
+ * Positions related by a valid symmetry have the same game value, so tables can store one entry
+ * per equivalence class under canonicalZobrist().
+ */
+public final class PentagoSymmetry {
+    public static final int IDENTITY = 0;
+    public static final int ROTATE_90 = 1;
+    public static final int ROTATE_180 = 2;
+    public static final int ROTATE_270 = 3;
+    public static final int MIRROR_COLUMNS = 4;
+    public static final int MIRROR_ROWS = 5;
+    public static final int TRANSPOSE = 6;
+    public static final int ANTI_TRANSPOSE = 7;
+    public static final int NUM_SYMMETRIES = 8;
+
+    private static final int BOARD_SIZE = PentagoBitboard.BOARD_SIZE;
+    private static final int NUM_CELLS = PentagoBitboard.NUM_CELLS;
+    private static final int ROW_PATTERNS = 1 << BOARD_SIZE;
+
+    // CELL_IMAGE[sym][cell] is the cell that sym moves cell to.
+    private static final int[][] CELL_IMAGE = new int[NUM_SYMMETRIES][NUM_CELLS];
+    // ROW_IMAGE[sym][row][pattern] is the image of a row's 6-bit occupancy, as a board mask.
+    private static final long[][][] ROW_IMAGE = new long[NUM_SYMMETRIES][BOARD_SIZE][ROW_PATTERNS];
+    // Image of twist (quad, swap) under sym, or -1 if it is not a legal twist.
+    private static final int[][][] TWIST_IMAGE = new int[NUM_SYMMETRIES][PentagoBitboard.NUM_QUADS][2];
+    private static final boolean[] VALID = new boolean[NUM_SYMMETRIES];
+    private static final int[] VALID_SYMMETRIES;
+
+    static {
+        int last = BOARD_SIZE - 1;
+        for (int x = 0; x < BOARD_SIZE; x++) {
+            for (int y = 0; y < BOARD_SIZE; y++) {
+                int cell = PentagoBitboard.index(x, y);
+                CELL_IMAGE[IDENTITY][cell] = cell;
+                CELL_IMAGE[ROTATE_90][cell] = PentagoBitboard.index(y, last - x);
+                CELL_IMAGE[ROTATE_180][cell] = PentagoBitboard.index(last - x, last - y);
+                CELL_IMAGE[ROTATE_270][cell] = PentagoBitboard.index(last - y, x);
+                CELL_IMAGE[MIRROR_COLUMNS][cell] = PentagoBitboard.index(x, last - y);
+                CELL_IMAGE[MIRROR_ROWS][cell] = PentagoBitboard.index(last - x, y);
+                CELL_IMAGE[TRANSPOSE][cell] = PentagoBitboard.index(y, x);
+                CELL_IMAGE[ANTI_TRANSPOSE][cell] = PentagoBitboard.index(last - y, last - x);
+            }
+        }
+
+        int validCount = 0;
+        for (int sym = 0; sym < NUM_SYMMETRIES; sym++) {
+            for (int row = 0; row < BOARD_SIZE; row++) {
+                for (int pattern = 0; pattern < ROW_PATTERNS; pattern++) {
+                    for (int col = 0; col < BOARD_SIZE; col++) {
+                        if ((pattern & (1 << col)) != 0) {
+                            ROW_IMAGE[sym][row][pattern] |= 1L << CELL_IMAGE[sym][PentagoBitboard.index(row, col)];
+                        }
+                    }
+                }
+            }
+
+            VALID[sym] = preservesWinLines(sym);
+            for (int quad = 0; quad < PentagoBitboard.NUM_QUADS; quad++) {
+                for (int swap = 0; swap < 2; swap++) {
+                    TWIST_IMAGE[sym][quad][swap] = conjugateTwist(sym, quad, swap);
+                    VALID[sym] &= TWIST_IMAGE[sym][quad][swap] >= 0;
+                }
+            }
+            if (VALID[sym]) { validCount++; }
+        }
+
+        VALID_SYMMETRIES = new int[validCount];
+        for (int sym = 0, i = 0; sym < NUM_SYMMETRIES; sym++) {
+            if (VALID[sym]) { VALID_SYMMETRIES[i++] = sym; }
+        }
+    }
+
+    private PentagoSymmetry() {}
+
+    private static boolean preservesWinLines(int sym) {
+        for (long line : PentagoBitboard.WIN_LINES) {
+            boolean found = false;
+            for (long other : PentagoBitboard.WIN_LINES) {
+                found |= other == transform(line, sym);
+            }
+            if (!found) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the twist equal to sym o twist(quad, swap) o sym^-1 as a permutation of the cells.
+     * @return quad' * 2 + swap', or -1 if no legal twist matches
+     */
+    private static int conjugateTwist(int sym, int quad, int swap) {
+        int inverse = inverse(sym);
+        for (int otherQuad = 0; otherQuad < PentagoBitboard.NUM_QUADS; otherQuad++) {
+            for (int otherSwap = 0; otherSwap < 2; otherSwap++) {
+                boolean same = true;
+                for (int cell = 0; cell < NUM_CELLS && same; cell++) {
+                    long moved = transform(PentagoBitboard.twist(1L << CELL_IMAGE[inverse][cell], quad, swap), sym);
+                    same = moved == PentagoBitboard.twist(1L << cell, otherQuad, otherSwap);
+                }
+                if (same) { return otherQuad * 2 + otherSwap; }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the symmetry that undoes sym
+     */
+    public static int inverse(int sym) {
+        for (int other = 0; other < NUM_SYMMETRIES; other++) {
+            boolean same = true;
+            for (int cell = 0; cell < NUM_CELLS && same; cell++) {
+                same = CELL_IMAGE[other][CELL_IMAGE[sym][cell]] == cell;
+            }
+            if (same) { return other; }
+        }
+        throw new IllegalStateException("Symmetry without inverse: " + sym);
+    }
+
+    /**
+     * @return true if sym maps the move set, and therefore the whole game, onto itself
+     */
+    public static boolean isValid(int sym) {
+        return sym >= 0 && sym < NUM_SYMMETRIES && VALID[sym];
+    }
+
+    /**
+     * @return the symmetries that preserve the Pentago-Twist move set
+     */
+    public static int[] getValidSymmetries() {
+        return VALID_SYMMETRIES.clone();
+    }
+
+    static long transform(long mask, int sym) {
+        long[][] rows = ROW_IMAGE[sym];
+        long image = 0;
+        for (int row = 0; row < BOARD_SIZE; row++) {
+            image |= rows[row][(int) (mask >>> (row * BOARD_SIZE)) & (ROW_PATTERNS - 1)];
+        }
+        return image;
+    }
+
+    /**
+     * @return a new state with the pieces moved by sym, same turn and winner
+     */
+    public static PentagoBoardState transform(PentagoBoardState state, int sym) {
+        return new PentagoBoardState(transform(state.getWhiteMask(), sym), transform(state.getBlackMask(), sym),
+                state.getTurnPlayer(), state.getTurnNumber(), state.getWinner());
+    }
+
+    /**
+     * Maps a move of a position to the corresponding move of its image under a valid symmetry.
+     */
+    public static PentagoMove transformMove(PentagoMove m, int sym) {
+        if (!isValid(sym)) { throw new IllegalArgumentException("Symmetry does not preserve the move set: " + sym); }
+        PentagoCoord c = m.getMoveCoord();
+        int cell = CELL_IMAGE[sym][PentagoBitboard.index(c.getX(), c.getY())];
+        int twist = TWIST_IMAGE[sym][m.getASwap()][m.getBSwap()];
+        return new PentagoMove(cell / BOARD_SIZE, cell % BOARD_SIZE, twist / 2, twist % 2, m.getPlayerID());
+    }
+
+    /**
+     * Picks the valid symmetry whose image has the smallest (white, black) masks.
+     * transform(state, canonicalSymmetry(state)) is the same for every position of an equivalence class.
+     */
+    public static int canonicalSymmetry(PentagoBoardState state) {
+        long white = state.getWhiteMask();
+        long black = state.getBlackMask();
+        int best = IDENTITY;
+        long bestWhite = white;
+        long bestBlack = black;
+        for (int sym : VALID_SYMMETRIES) {
+            long w = transform(white, sym);
+            long b = transform(black, sym);
+            if (w < bestWhite || (w == bestWhite && b < bestBlack)) {
+                best = sym;
+                bestWhite = w;
+                bestBlack = b;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the canonical representative of the position's equivalence class
+     */
+    public static PentagoBoardState canonicalize(PentagoBoardState state) {
+        return transform(state, canonicalSymmetry(state));
+    }
+
+    /**
+     * @return the Zobrist hash of the canonical representative, shared by all equivalent positions
+     */
+    public static long canonicalZobrist(PentagoBoardState state) {
+        int sym = canonicalSymmetry(state);
+        if (sym == IDENTITY) { return state.zobrist(); }
+        return PentagoBitboard.zobrist(transform(state.getWhiteMask(), sym), transform(state.getBlackMask(), sym),
+                state.getTurnPlayer());
+    }
+}
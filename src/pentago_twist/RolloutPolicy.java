@@ -0,0 +1,24 @@
+package pentago_twist;
+
+/**
+ * How a playout picks its moves, so that a search can swap the random playouts of
+ * PentagoPlayout for smarter ones.
+ */
+@FunctionalInterface
+public interface RolloutPolicy {
+
+    /** Every legal move equally likely: PentagoPlayout. */
+    RolloutPolicy UNIFORM = PentagoPlayout::play;
+
+    /** Wins at once when possible, blocks the opponent's immediate wins, else uniform: HeavyPlayout. */
+    RolloutPolicy HEAVY = HeavyPlayout::play;
+
+    /**
+     * Plays a game to the end from a state, which is left untouched, and reports where each
+     * colour placed its marbles: bit i of placements[colour] is set if that colour placed on
+     * cell i (before the twist) at least once.
+     * @param placements: array of two masks, indexed by colour, overwritten; or null
+     * @return the winner: PentagoBoardState.WHITE, BLACK, Board.DRAW, or Board.NOBODY if the turns ran out
+     */
+    int play(PentagoBoardState state, FastRandom rand, long[] placements);
+}
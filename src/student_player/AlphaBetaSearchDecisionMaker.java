@@ -11,23 +11,66 @@ public class AlphaBetaSearchDecisionMaker implements DecisionMaker {
     private PentagoBoardState boardState;
     private static final Integer MAXIMUM_DEPTH = 3;
 
-    private HashMap<String, Double> evalLoopUpTable;
+    private TranspositionTable evalLoopUpTable;
 
-    private static final Long MAX_TIME = 1000000L;
+    // Without one set, the search is stopped at the server's timeouts.
+    private TimeManager timeManager = new TimeManager();
+
+    // Marks a result without a move, e.g. a leaf.
+    private static final int NO_MOVE = -1;
+
+    // Packed moves of the node being searched at each depth, one per distinct child position.
+    private int[][] moveBuffers;
 
     private long startTime;
 
+    // Iterative deepening: the depth of the current iteration, the best move of the last one, and
+    // whether the time ran out, in which case the node being searched has no valid result.
+    private int searchDepth;
+    private int principalMove = NO_MOVE;
+    private boolean timedOut;
+
     public AlphaBetaSearchDecisionMaker(PentagoBoardState state) {
         this.boardState = state;
-        this.evalLoopUpTable = new HashMap<>();
+        this.evalLoopUpTable = new TranspositionTable(1 << 16);
+        this.moveBuffers = new int[MAXIMUM_DEPTH][PentagoBoardState.MAX_LEGAL_MOVES];
+    }
+
+    /**
+     * Budget each decision with a time manager.
+     *
+     * @param timeManager A time manager, only used by this engine.
+     */
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
     }
 
     @Override
     public PentagoMove makeDecision() {
         this.startTime = System.currentTimeMillis();
-        PentagoMove move = maxValue(this.boardState, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).move;
+        this.timeManager.startTurn(this.boardState.getTurnNumber());
+
+        // The whole search walks one mutable copy with applyMove/undoMove. Each depth searches the
+        // best move of the last one first, so a depth cut short by the deadline still improves on
+        // it with the root children it searched in full.
+        PentagoBoardState searchState = (PentagoBoardState) this.boardState.clone();
+        this.principalMove = NO_MOVE;
+        this.timedOut = false;
+        for (int depth = 1; depth <= AlphaBetaSearchDecisionMaker.MAXIMUM_DEPTH && !this.timedOut; depth++) {
+            // Values depend on the depth left, so none is kept from the last depth.
+            this.searchDepth = depth;
+            this.evalLoopUpTable.clear();
+            int move = maxValue(searchState, 0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).move;
+            if (move != NO_MOVE)
+                this.principalMove = move;
+        }
+
+        // Without time for a single root child, any legal move beats none.
+        int move = this.principalMove;
+        if (move == NO_MOVE && this.boardState.getDistinctSuccessors(this.moveBuffers[0]) > 0)
+            move = this.moveBuffers[0][0];
         System.out.println("TIME SPENT: " + (System.currentTimeMillis() - startTime));
-        return move;
+        return move == NO_MOVE ? null : PentagoMove.unpack(move);
     }
 
     private Piece getMyColor(PentagoBoardState state) {
@@ -39,125 +82,143 @@ public class AlphaBetaSearchDecisionMaker implements DecisionMaker {
     }
 
     private Node maxValue(PentagoBoardState state, int depth, double alpha, double beta) {
-        if (state.gameOver() || depth >= AlphaBetaSearchDecisionMaker.MAXIMUM_DEPTH)
+        if (state.gameOver() || depth >= this.searchDepth)
             return new Node(
-                    null,
-                    null,
+                    NO_MOVE,
                     Evaluation.eval(state.getBoard(), getOpponentColor(this.boardState), getMyColor(this.boardState))
             );
 
-        ArrayList<PentagoMove> moves = state.getAllLegalMoves();
-        HashSet<String> visitedBoard = new HashSet<>();
+        int[] moves = this.moveBuffers[depth];
+        int moveCount = state.getDistinctSuccessors(moves);
+        if (depth == 0)
+            searchFirst(moves, moveCount, this.principalMove);
 
         // Keep info.
-        PentagoMove bestMove = null;
-        PentagoBoardState bestState = null;
+        int bestMove = NO_MOVE;
         double bestEval = Double.NEGATIVE_INFINITY;
 
         // Start checking.
-        for (PentagoMove move : moves) {
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
 
-            if (System.currentTimeMillis() - this.startTime > AlphaBetaSearchDecisionMaker.MAX_TIME)
+            if (this.timeManager.outOfTime()) {
+                this.timedOut = true;
                 break;
+            }
 
-            PentagoBoardState clonedState = (PentagoBoardState) state.clone();
-            clonedState.processMove(move);
-
-            String str = clonedState.toString();
-
-            if (visitedBoard.contains(str))
-                continue;
-            visitedBoard.add(str);
+            long undo = state.applyMove(move);
 
+            // Keyed by the exact position, not its symmetry class: Evaluation.eval scans lines in one
+            // direction only, so a position and its half-turn image can evaluate differently.
+            long tableKey = state.zobrist();
             Node result;
+            double cached = this.evalLoopUpTable.get(tableKey, Double.NaN);
 
-            if (this.evalLoopUpTable.containsKey(str))
-                result = new Node(null, null, this.evalLoopUpTable.get(str));
+            if (!Double.isNaN(cached))
+                result = new Node(NO_MOVE, cached);
             else
-                result = minValue(clonedState, depth + 1, alpha, beta);
+                result = minValue(state, depth + 1, alpha, beta);
 
-            this.evalLoopUpTable.put(clonedState.toString(), result.stateEvaluation);
+            // A child the deadline cut short has no valid value: drop it, and keep it out of the table.
+            if (this.timedOut) {
+                state.undoMove(undo);
+                break;
+            }
+
+            this.evalLoopUpTable.put(tableKey, result.stateEvaluation);
+            state.undoMove(undo);
 
             if (result.stateEvaluation > bestEval) {
                 bestEval = result.stateEvaluation;
-                bestState = clonedState;
                 bestMove = move;
             }
 
             if (bestEval >= beta)
-                return new Node(bestState, bestMove, bestEval);
+                return new Node(bestMove, bestEval);
 
             alpha = Math.max(alpha, bestEval);
         }
 
-        return new Node(bestState, bestMove, bestEval);
+        return new Node(bestMove, bestEval);
     }
 
     private Node minValue(PentagoBoardState state, int depth, double alpha, double beta) {
 
-        long startTime = System.currentTimeMillis();
-
-        if (state.gameOver() || depth >= AlphaBetaSearchDecisionMaker.MAXIMUM_DEPTH)
+        if (state.gameOver() || depth >= this.searchDepth)
             return new Node(
-                    null,
-                    null,
+                    NO_MOVE,
                     Evaluation.eval(state.getBoard(), getOpponentColor(this.boardState), getMyColor(this.boardState))
             );
 
-        ArrayList<PentagoMove> moves = state.getAllLegalMoves();
-        HashSet<String> visitedBoard = new HashSet<>();
+        int[] moves = this.moveBuffers[depth];
+        int moveCount = state.getDistinctSuccessors(moves);
 
         // Keep info.
-        PentagoMove bestMove = null;
-        PentagoBoardState bestState = null;
+        int bestMove = NO_MOVE;
         double worstEval = Double.POSITIVE_INFINITY;
 
         // Start checking.
-        for (PentagoMove move : moves) {
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
 
-            if (System.currentTimeMillis() - this.startTime > AlphaBetaSearchDecisionMaker.MAX_TIME)
+            if (this.timeManager.outOfTime()) {
+                this.timedOut = true;
                 break;
+            }
 
-            PentagoBoardState clonedState = (PentagoBoardState) state.clone();
-            clonedState.processMove(move);
-
-            String str = clonedState.toString();
-
-            if (visitedBoard.contains(str))
-                continue;
-            visitedBoard.add(str);
+            long undo = state.applyMove(move);
 
+            // Keyed by the exact position, not its symmetry class: Evaluation.eval scans lines in one
+            // direction only, so a position and its half-turn image can evaluate differently.
+            long tableKey = state.zobrist();
             Node result;
+            double cached = this.evalLoopUpTable.get(tableKey, Double.NaN);
 
-            if (this.evalLoopUpTable.containsKey(str))
-                result = new Node(null, null, this.evalLoopUpTable.get(str));
+            if (!Double.isNaN(cached))
+                result = new Node(NO_MOVE, cached);
             else
-                result = maxValue(clonedState, depth + 1, alpha, beta);
+                result = maxValue(state, depth + 1, alpha, beta);
 
-            this.evalLoopUpTable.put(clonedState.toString(), result.stateEvaluation);
+            // A child the deadline cut short has no valid value: drop it, and keep it out of the table.
+            if (this.timedOut) {
+                state.undoMove(undo);
+                break;
+            }
+
+            this.evalLoopUpTable.put(tableKey, result.stateEvaluation);
+            state.undoMove(undo);
 
             if (result.stateEvaluation < worstEval) {
                 worstEval = result.stateEvaluation;
-                bestState = clonedState;
                 bestMove = move;
             }
 
             if (worstEval <= alpha)
-                return new Node(bestState, bestMove, worstEval);
+                return new Node(bestMove, worstEval);
 
             beta = Math.max(beta, worstEval);
         }
 
-        return new Node(bestState, bestMove, worstEval);
+        return new Node(bestMove, worstEval);
+    }
+
+    /**
+     * Move a move to the front of a move list, if it is in it.
+     */
+    private static void searchFirst(int[] moves, int moveCount, int move) {
+        for (int i = 0; i < moveCount; i++)
+            if (moves[i] == move) {
+                moves[i] = moves[0];
+                moves[0] = move;
+                return;
+            }
     }
 
     public class Node {
-        PentagoBoardState resultState;
-        PentagoMove move;
+        int move;
         Double stateEvaluation;
 
-        public Node(PentagoBoardState state, PentagoMove move, Double eval) {
-            this.resultState = state;
+        public Node(int move, Double eval) {
             this.move = move;
             this.stateEvaluation = eval;
         }
@@ -0,0 +1,237 @@
+package student_player;
+
+import pentago_twist.FastRandom;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
+import pentago_twist.PentagoPlayout;
+
+import java.util.Random;
+
+/**
+ * Monte Carlo Tree Search over a MonteCarloNodeStore. Same selection, expansion and
+ * simulation rules as MonteCarloDecisionMaker, but nodes are array slots instead of objects:
+ * the search keeps one mutable state, plays the moves of the selected path on it and undoes
+ * them after the update, so no node holds a board, a Random or a child list.
+ */
+public class ArrayMonteCarloDecisionMaker implements DecisionMaker {
+
+    private static final Long MOVE_TIMEOUT = 2000L;
+    private static final Integer REPETITIVE_SIM_RATE = 20;
+    private static final Double UCT_CONST = Math.sqrt(2);
+    private static final boolean SHOW_STAT = false;
+    private static final Integer WIN_LEVER = 4;
+    private static final Integer LOSE_LEVER = 4;
+    private static final int NO_MOVE = -1;
+    // Without a store given, nodes take up to HEAP_SHARE of the heap, allocated INITIAL_CAPACITY at first.
+    private static final int INITIAL_CAPACITY = 1 << 16;
+    private static final double HEAP_SHARE = 0.25;
+
+    // A game never lasts more than 2 * MAX_TURNS plies.
+    private static final int MAX_PLIES = 2 * PentagoBoardState.MAX_TURNS;
+
+    private final MonteCarloNodeStore nodes;
+    private final PentagoBoardState state;
+    private final int player;
+    private final Random rand = new Random(2019);
+    private final FastRandom playoutRandom = new FastRandom(2019);
+    private int simulations;
+    private TimeManager timeManager = new TimeManager(MOVE_TIMEOUT, MOVE_TIMEOUT);
+
+    // Selected path (node ids) and the undo tokens of its moves.
+    private final int[] path = new int[MAX_PLIES + 1];
+    private final long[] pathUndo = new long[MAX_PLIES];
+
+    // Packed move buffer.
+    private final int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+
+    public ArrayMonteCarloDecisionMaker(PentagoBoardState state) {
+        this(state, new MonteCarloNodeStore(INITIAL_CAPACITY, Math.max(INITIAL_CAPACITY, MonteCarloNodeStore.capacityFor(HEAP_SHARE))));
+    }
+
+    /**
+     * @param state The position to move in.
+     * @param nodes Node storage, cleared first; pass the same store every turn to avoid reallocating it.
+     */
+    public ArrayMonteCarloDecisionMaker(PentagoBoardState state, MonteCarloNodeStore nodes) {
+        this.state = (PentagoBoardState) state.clone();
+        this.player = state.getTurnPlayer();
+        this.nodes = nodes;
+        this.nodes.clear(NO_MOVE);
+        expand(MonteCarloNodeStore.ROOT);
+    }
+
+    /**
+     * Budget each decision with a time manager instead of a fixed MOVE_TIMEOUT per move.
+     *
+     * @param timeManager A time manager, only used by this engine.
+     */
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    @Override
+    public PentagoMove makeDecision() {
+
+        // If we can win in one round, return.
+        if (this.state.getWinningMoves(this.moves) > 0)
+            return PentagoMove.unpack(this.moves[0]);
+
+        this.timeManager.startTurn(this.state.getTurnNumber());
+        for (this.simulations = 0; !this.timeManager.outOfTime(); this.simulations++)
+            runSimulation();
+
+        if (ArrayMonteCarloDecisionMaker.SHOW_STAT)
+            System.out.print("TREE SIZE: " + this.nodes.size() + " SIM TURN: " + this.simulations + "\n");
+        int move = getMoveWithHighestWinRate(MonteCarloNodeStore.ROOT);
+        return move == NO_MOVE ? null : PentagoMove.unpack(move);
+    }
+
+    /**
+     * Number of simulations run by the last search.
+     *
+     * @return Simulation count.
+     */
+    public int getSimulationCount() {
+        return this.simulations;
+    }
+
+    /**
+     * Number of nodes in the tree.
+     *
+     * @return Node count.
+     */
+    public int getTreeSize() {
+        return this.nodes.size();
+    }
+
+    /**
+     * One select, expand, simulate and update pass, leaving the state as it found it.
+     */
+    private void runSimulation() {
+        int depth = 0;
+        int node = MonteCarloNodeStore.ROOT;
+        this.path[0] = MonteCarloNodeStore.ROOT;
+
+        while (!this.nodes.isLeaf(node)) {
+            node = getNextPossibleNode(node);
+            this.pathUndo[depth++] = this.state.applyMove(this.nodes.move[node]);
+            this.path[depth] = node;
+        }
+
+        if (this.nodes.visits[node] != 0 && this.nodes.outcome[node] == MonteCarloNodeStore.ONGOING && expand(node)) {
+            node = getNextPossibleNode(node);
+            this.pathUndo[depth++] = this.state.applyMove(this.nodes.move[node]);
+            this.path[depth] = node;
+        }
+
+        simulate(node, depth);
+
+        while (depth > 0)
+            this.state.undoMove(this.pathUndo[--depth]);
+    }
+
+    /**
+     * Expand a node of the current state. Children are stored in random order.
+     *
+     * @param node The node at the current state.
+     * @return False if the store is full.
+     */
+    private boolean expand(int node) {
+        // One move per distinct resulting position.
+        int remaining = this.state.getDistinctSuccessors(this.moves);
+        int child = this.nodes.addChildren(node, remaining);
+        if (child == MonteCarloNodeStore.NONE)
+            return false;
+
+        while (remaining > 0) {
+            // Draw the moves in random order.
+            int pick = this.rand.nextInt(remaining);
+            int move = this.moves[pick];
+            this.moves[pick] = this.moves[--remaining];
+            this.nodes.move[child] = move;
+
+            // If already over, score it once.
+            long undo = this.state.applyMove(move);
+            if (this.state.gameOver()) {
+                boolean won = this.state.getWinner() == this.player;
+                this.nodes.outcome[child] = (byte) (MonteCarloNodeStore.TERMINAL | (won ? MonteCarloNodeStore.WON : 0));
+                this.nodes.visits[child] = ArrayMonteCarloDecisionMaker.REPETITIVE_SIM_RATE;
+                this.nodes.wins[child] = won ? ArrayMonteCarloDecisionMaker.REPETITIVE_SIM_RATE : 0;
+            }
+            this.state.undoMove(undo);
+            child++;
+        }
+        return true;
+    }
+
+    /**
+     * Fetch the best child according to their UCT.
+     *
+     * @param node An expanded node.
+     * @return The best child id.
+     */
+    private int getNextPossibleNode(int node) {
+        int first = this.nodes.firstChild[node];
+        int end = first + this.nodes.childCount[node];
+        double logParent = Math.log1p(this.nodes.visits[node]);
+        int best = MonteCarloNodeStore.NONE;
+        double bestUCT = Double.NEGATIVE_INFINITY;
+        for (int child = first; child < end; child++) {
+            int visits = this.nodes.visits[child];
+            double Q_sa = visits == 0 ? 0.0 : ((double) this.nodes.wins[child]) / visits;
+            double N_sa = visits == 0 ? 0.000001 : visits;
+            double uct = Q_sa + ArrayMonteCarloDecisionMaker.UCT_CONST * Math.sqrt(logParent / N_sa);
+            if (uct > bestUCT) {
+                best = child;
+                bestUCT = uct;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Run the playouts of a leaf on the current state, then update the selected path.
+     *
+     * @param node  The leaf, at the current state.
+     * @param depth Its position on the path.
+     */
+    private void simulate(int node, int depth) {
+        int dTimeVisited = ArrayMonteCarloDecisionMaker.REPETITIVE_SIM_RATE, dWinFrequency = 0;
+
+        byte outcome = this.nodes.outcome[node];
+        if (outcome == MonteCarloNodeStore.ONGOING) {
+            for (int i = 0; i < ArrayMonteCarloDecisionMaker.REPETITIVE_SIM_RATE; i++)
+                dWinFrequency += PentagoPlayout.play(this.state, this.playoutRandom) == this.player ? 1 : 0;
+        } else {
+            boolean won = (outcome & MonteCarloNodeStore.WON) != 0;
+            dTimeVisited *= won ? 1 : ArrayMonteCarloDecisionMaker.LOSE_LEVER;
+            dWinFrequency = won ? dTimeVisited * ArrayMonteCarloDecisionMaker.WIN_LEVER : 0;
+        }
+
+        for (int i = depth; i >= 0; i--) {
+            this.nodes.visits[this.path[i]] += dTimeVisited;
+            this.nodes.wins[this.path[i]] += dWinFrequency;
+        }
+    }
+
+    /**
+     * Find the best move according to win ratio.
+     *
+     * @param node An expanded node.
+     * @return A packed move.
+     */
+    private int getMoveWithHighestWinRate(int node) {
+        double highestWinRate = Double.NEGATIVE_INFINITY;
+        int bestMove = NO_MOVE;
+        int first = this.nodes.firstChild[node];
+        int end = first + this.nodes.childCount[node];
+        for (int child = first; child < end; child++) {
+            int visits = this.nodes.visits[child];
+            if (visits != 0 && (double) this.nodes.wins[child] / visits > highestWinRate) {
+                bestMove = this.nodes.move[child];
+                highestWinRate = (double) this.nodes.wins[child] / visits;
+            }
+        }
+        return bestMove;
+    }
+}
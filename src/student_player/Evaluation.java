@@ -1,5 +1,6 @@
 package student_player;
 
+import pentago_twist.PentagoBoardState;
 import pentago_twist.PentagoBoardState.Piece;
 
 import java.util.HashMap;
@@ -9,10 +10,84 @@ public class Evaluation implements EvaluationTool {
 
     private static final int[] WEIGHT = {1000, 300, 100, 10, 1, 0, 0};
 
+    // Cells (x * BOARD_SIZE + y) of the rows, columns and diagonals crudeCountTotalMTW reads, in its order.
+    private static final int[][] LINES = new int[18][];
+
+    static {
+        int size = PentagoBoardState.BOARD_SIZE, line = 0;
+        for (int i = 0; i < size; i++)
+            LINES[line++] = walk(i, 0, 0, 1);
+        for (int i = 0; i < size; i++)
+            LINES[line++] = walk(0, i, 1, 0);
+        LINES[line++] = walk(1, 0, 1, 1);
+        LINES[line++] = walk(0, 0, 1, 1);
+        LINES[line++] = walk(0, 1, 1, 1);
+        LINES[line++] = walk(4, 0, -1, 1);
+        LINES[line++] = walk(5, 0, -1, 1);
+        LINES[line] = walk(5, 1, -1, 1);
+    }
+
     public static double eval(Piece[][] board, Piece opponentColor, Piece myColor) {
         return MyMath.dotProduct(crudeCountTotalMTW(board, opponentColor), Evaluation.WEIGHT);
     }
 
+    /**
+     * Same value as eval(Piece[][], Piece, Piece), read from colour masks
+     * (bit x * BOARD_SIZE + y per marble) without building any array.
+     *
+     * @param opponent Opponent's marbles.
+     * @param mine     My marbles.
+     * @return The evaluation.
+     */
+    public static double eval(long opponent, long mine) {
+        int total = 0;
+        for (int[] line : LINES)
+            total += Evaluation.WEIGHT[countLineMTW(line, opponent, mine)];
+        return total;
+    }
+
+    /**
+     * countRowMTW on masks.
+     *
+     * @param line     Cells of a row.
+     * @param opponent Opponent's marbles.
+     * @param mine     My marbles.
+     * @return Minimum steps to win.
+     */
+    private static int countLineMTW(int[] line, long opponent, long mine) {
+        int minMTW = 5, numOfWhite = 0, prev = -1, numOfMyColor = 0;
+        for (int i = 0; i < line.length; i++) {
+            long bit = 1L << line[i];
+            if ((opponent & bit) != 0) {
+                if (prev == -1 && i >= 5)
+                    minMTW = Math.min(minMTW, numOfWhite);
+                else if (prev != -1 && i - prev - 1 >= 5)
+                    minMTW = Math.min(minMTW, numOfWhite);
+                prev = i;
+                numOfWhite = 0;
+            } else if ((mine & bit) == 0)
+                numOfWhite++;
+            else
+                numOfMyColor++;
+        }
+
+        if (prev == -1)
+            return Math.min(minMTW, line.length - numOfMyColor);
+
+        return minMTW;
+    }
+
+    /**
+     * Cells from a start while on the board.
+     */
+    private static int[] walk(int row, int col, int dRow, int dCol) {
+        int size = PentagoBoardState.BOARD_SIZE, length = 0;
+        int[] cells = new int[size];
+        for (int r = row, c = col; r >= 0 && r < size && c < size; r += dRow, c += dCol)
+            cells[length++] = r * size + c;
+        return java.util.Arrays.copyOf(cells, length);
+    }
+
     /**
      * Count how many pieces need to win in a row.
      *
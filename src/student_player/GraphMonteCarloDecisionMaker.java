@@ -0,0 +1,399 @@
+package student_player;
+
+import pentago_twist.FastRandom;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
+import pentago_twist.PentagoPlayout;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Monte Carlo search on a transposition graph instead of a tree.
+ *
+ * Every position is stored once, found by its 64-bit Zobrist hash, so the placement orders that
+ * lead to the same position share its statistics. A position node owns its outgoing edges, and
+ * each edge keeps its own visit and win counts: selection scores an edge with the value of the
+ * position it leads to and explores with the edge's visits (UCT on a DAG), and the decision at
+ * the root uses the root edges like the tree engines use the root children.
+ *
+ * Selection, expansion, simulation and scoring otherwise follow ArrayMonteCarloDecisionMaker,
+ * with the same primitive-array storage: one mutable state plays the selected path and undoes it.
+ */
+public class GraphMonteCarloDecisionMaker implements DecisionMaker {
+
+    private static final Long TIME_LIMIT = 1950L;
+    private static final Integer REPETITIVE_SIM_RATE = 20;
+    private static final Double UCT_CONST = Math.sqrt(2);
+    private static final boolean SHOW_STAT = false;
+    private static final Integer WIN_LEVER = 4;
+    private static final Integer LOSE_LEVER = 4;
+    private static final int NO_MOVE = -1;
+    private static final int NONE = -1;
+    private static final int ROOT = 0;
+    private static final int DEFAULT_NODE_CAPACITY = 1 << 20;
+    // Edges first reserved per node. An expansion adds up to MAX_LEGAL_MOVES edges, so the edge
+    // arrays grow by doubling when full, up to MAX_LEGAL_MOVES per node or EDGE_HEAP_SHARE of the
+    // heap. Past that, leaves are simulated without being expanded.
+    private static final int EDGES_PER_NODE = 4;
+    private static final int BYTES_PER_EDGE = 4 * Integer.BYTES;
+    private static final double EDGE_HEAP_SHARE = 0.25;
+    private static final int MAX_EDGE_CAPACITY = Integer.MAX_VALUE - 8;
+
+    // Outcome flags of a position node, as in MonteCarloNodeStore.
+    private static final byte ONGOING = 0;
+    private static final byte TERMINAL = 1;
+    private static final byte WON = 2;
+
+    // A game never lasts more than 2 * MAX_TURNS plies.
+    private static final int MAX_PLIES = 2 * PentagoBoardState.MAX_TURNS;
+
+    // Position nodes.
+    private final long[] key;
+    private final int[] visits;
+    private final int[] wins;
+    private final int[] firstEdge;
+    private final short[] edgeCount;
+    private final byte[] outcome;
+    private int nodeCount;
+
+    // Edges, contiguous per node. The child is NONE until the edge is first followed.
+    private int[] edgeMove;
+    private int[] edgeChild;
+    private int[] edgeVisits;
+    private int[] edgeWins;
+    private int edgeTotal;
+    private final int maxEdges;
+
+    // Open-addressing index from position hash to node id (NONE for empty slots).
+    private final int[] index;
+
+    private final PentagoBoardState state;
+    private final int player;
+    private final Random rand = new Random(2019);
+    private final FastRandom playoutRandom = new FastRandom(2019);
+    private int simulations;
+    private int transpositions;
+
+    // Selected path: node ids, the edges between them and the undo tokens of their moves.
+    private final int[] pathNodes = new int[MAX_PLIES + 1];
+    private final int[] pathEdges = new int[MAX_PLIES];
+    private final long[] pathUndo = new long[MAX_PLIES];
+    private final int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+
+    public GraphMonteCarloDecisionMaker(PentagoBoardState state) {
+        this(state, DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * @param state        The position to move in.
+     * @param nodeCapacity Maximum number of positions; EDGES_PER_NODE times as many edges are reserved
+     *                     at first, and more as expansions need them.
+     */
+    public GraphMonteCarloDecisionMaker(PentagoBoardState state, int nodeCapacity) {
+        if (nodeCapacity < 1)
+            throw new IllegalArgumentException("Capacity must be positive: " + nodeCapacity);
+        this.key = new long[nodeCapacity];
+        this.visits = new int[nodeCapacity];
+        this.wins = new int[nodeCapacity];
+        this.firstEdge = new int[nodeCapacity];
+        this.edgeCount = new short[nodeCapacity];
+        this.outcome = new byte[nodeCapacity];
+        long heapEdges = (long) (EDGE_HEAP_SHARE * Runtime.getRuntime().maxMemory()) / BYTES_PER_EDGE;
+        this.maxEdges = (int) Math.min(Math.min(MAX_EDGE_CAPACITY, heapEdges), (long) nodeCapacity * PentagoBoardState.MAX_LEGAL_MOVES);
+        int edgeCapacity = (int) Math.min(this.maxEdges, Math.max((long) nodeCapacity * EDGES_PER_NODE, PentagoBoardState.MAX_LEGAL_MOVES));
+        this.edgeMove = new int[edgeCapacity];
+        this.edgeChild = new int[edgeCapacity];
+        this.edgeVisits = new int[edgeCapacity];
+        this.edgeWins = new int[edgeCapacity];
+        this.index = new int[Integer.highestOneBit(nodeCapacity * 2 - 1) << 1];
+        Arrays.fill(this.index, NONE);
+
+        this.state = (PentagoBoardState) state.clone();
+        this.player = state.getTurnPlayer();
+        addNode();
+        expand(ROOT);
+    }
+
+    @Override
+    public PentagoMove makeDecision() {
+
+        // If we can win in one round, return.
+        if (this.state.getWinningMoves(this.moves) > 0)
+            return PentagoMove.unpack(this.moves[0]);
+
+        long deadline = System.currentTimeMillis() + GraphMonteCarloDecisionMaker.TIME_LIMIT;
+        this.simulations = 0;
+        while (System.currentTimeMillis() < deadline)
+            runSimulation();
+
+        if (GraphMonteCarloDecisionMaker.SHOW_STAT)
+            System.out.print("GRAPH SIZE: " + this.nodeCount + " TRANSPOSITIONS: " + this.transpositions
+                    + " SIM TURN: " + this.simulations + "\n");
+        int move = getMoveWithHighestWinRate(ROOT);
+        return move == NO_MOVE ? null : PentagoMove.unpack(move);
+    }
+
+    /**
+     * Number of simulations run by the last search: leaves that ran playouts, not the visits to
+     * finished games, which are scored without any.
+     *
+     * @return Simulation count.
+     */
+    public int getSimulationCount() {
+        return this.simulations;
+    }
+
+    /**
+     * Number of positions in the graph.
+     *
+     * @return Node count.
+     */
+    public int getGraphSize() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Number of edges in the graph.
+     *
+     * @return Edge count.
+     */
+    public int getEdgeCount() {
+        return this.edgeTotal;
+    }
+
+    /**
+     * Number of times an edge led to a position already in the graph.
+     *
+     * @return Transposition count.
+     */
+    public int getTranspositionCount() {
+        return this.transpositions;
+    }
+
+    /**
+     * One select, expand, simulate and update pass, leaving the state as it found it.
+     */
+    private void runSimulation() {
+        int depth = 0;
+        int node = ROOT;
+        this.pathNodes[0] = ROOT;
+
+        while (this.edgeCount[node] > 0) {
+            int next = follow(node, getNextPossibleEdge(node), depth++);
+            if (next == NONE)
+                break; // The graph is full, simulate from the state reached.
+            node = next;
+            if (this.visits[node] == 0)
+                break; // A new position is a leaf.
+        }
+
+        if (this.pathNodes[depth] == node && this.visits[node] != 0 && this.outcome[node] == ONGOING
+                && this.edgeCount[node] == 0 && expand(node)) {
+            int next = follow(node, getNextPossibleEdge(node), depth++);
+            if (next != NONE)
+                node = next;
+        }
+
+        simulate(node, depth);
+
+        while (depth > 0)
+            this.state.undoMove(this.pathUndo[--depth]);
+    }
+
+    /**
+     * Play an edge, linking it to its position node (shared or new) the first time.
+     *
+     * @param node  The node at the current state.
+     * @param edge  One of its edges.
+     * @param depth Position of node on the path.
+     * @return The node reached, or NONE if a new one did not fit; the move is played either way.
+     */
+    private int follow(int node, int edge, int depth) {
+        this.pathUndo[depth] = this.state.applyMove(this.edgeMove[edge]);
+        this.pathEdges[depth] = edge;
+
+        int child = this.edgeChild[edge];
+        if (child == NONE) {
+            child = find(this.state.zobrist());
+            if (child != NONE) {
+                this.transpositions++;
+            } else {
+                child = addNode();
+                if (child == NONE) {
+                    this.pathNodes[depth + 1] = NONE;
+                    return NONE;
+                }
+                if (this.state.gameOver())
+                    this.outcome[child] = (byte) (TERMINAL | (this.state.getWinner() == this.player ? WON : 0));
+            }
+            this.edgeChild[edge] = child;
+        }
+        this.pathNodes[depth + 1] = child;
+        return child;
+    }
+
+    /**
+     * Add a node for the current state to the graph and the index.
+     *
+     * @return Its id, or NONE if the graph is full.
+     */
+    private int addNode() {
+        if (this.nodeCount == this.key.length)
+            return NONE;
+        int node = this.nodeCount++;
+        long hash = this.state.zobrist();
+        this.key[node] = hash;
+        this.firstEdge[node] = NONE;
+
+        int mask = this.index.length - 1;
+        int slot = slot(hash) & mask;
+        while (this.index[slot] != NONE)
+            slot = (slot + 1) & mask;
+        this.index[slot] = node;
+        return node;
+    }
+
+    private int find(long hash) {
+        int mask = this.index.length - 1;
+        for (int slot = slot(hash) & mask; this.index[slot] != NONE; slot = (slot + 1) & mask)
+            if (this.key[this.index[slot]] == hash)
+                return this.index[slot];
+        return NONE;
+    }
+
+    private static int slot(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Create the edges of a node of the current state, in random order.
+     *
+     * @param node The node at the current state.
+     * @return False if the edges do not fit.
+     */
+    private boolean expand(int node) {
+        // One move per distinct resulting position.
+        int remaining = this.state.getDistinctSuccessors(this.moves);
+        if (!reserveEdges(remaining))
+            return false;
+
+        int edge = this.edgeTotal;
+        this.firstEdge[node] = edge;
+        this.edgeCount[node] = (short) remaining;
+        this.edgeTotal += remaining;
+        while (remaining > 0) {
+            // Draw the moves in random order.
+            int pick = this.rand.nextInt(remaining);
+            this.edgeMove[edge] = this.moves[pick];
+            this.moves[pick] = this.moves[--remaining];
+            this.edgeChild[edge] = NONE;
+            this.edgeVisits[edge] = 0;
+            this.edgeWins[edge] = 0;
+            edge++;
+        }
+        return true;
+    }
+
+    /**
+     * Make room for more edges, growing the edge arrays if needed.
+     *
+     * @param count Number of edges to add.
+     * @return False if they would pass the edge limit.
+     */
+    private boolean reserveEdges(int count) {
+        long needed = (long) this.edgeTotal + count;
+        if (needed <= this.edgeMove.length)
+            return true;
+        if (needed > this.maxEdges)
+            return false;
+
+        int capacity = (int) Math.min(this.maxEdges, Math.max(needed, 2L * this.edgeMove.length));
+        this.edgeMove = Arrays.copyOf(this.edgeMove, capacity);
+        this.edgeChild = Arrays.copyOf(this.edgeChild, capacity);
+        this.edgeVisits = Arrays.copyOf(this.edgeVisits, capacity);
+        this.edgeWins = Arrays.copyOf(this.edgeWins, capacity);
+        return true;
+    }
+
+    /**
+     * Fetch the best edge: the win rate of the position it leads to, which every path to that
+     * position feeds, plus an exploration term on the edge's own visits.
+     *
+     * @param node An expanded node.
+     * @return The best edge.
+     */
+    private int getNextPossibleEdge(int node) {
+        int first = this.firstEdge[node];
+        int end = first + this.edgeCount[node];
+        double logParent = Math.log1p(this.visits[node]);
+        int best = NONE;
+        double bestUCT = Double.NEGATIVE_INFINITY;
+        for (int edge = first; edge < end; edge++) {
+            int child = this.edgeChild[edge];
+            int childVisits = child == NONE ? 0 : this.visits[child];
+            double Q_sa = childVisits == 0 ? 0.0 : ((double) this.wins[child]) / childVisits;
+            double N_sa = this.edgeVisits[edge] == 0 ? 0.000001 : this.edgeVisits[edge];
+            double uct = Q_sa + GraphMonteCarloDecisionMaker.UCT_CONST * Math.sqrt(logParent / N_sa);
+            if (uct > bestUCT) {
+                best = edge;
+                bestUCT = uct;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Run the playouts of a leaf on the current state, then update the nodes and edges of the path.
+     *
+     * @param node  The leaf, at the current state.
+     * @param depth Number of edges on the path.
+     */
+    private void simulate(int node, int depth) {
+        int dTimeVisited = GraphMonteCarloDecisionMaker.REPETITIVE_SIM_RATE, dWinFrequency = 0;
+
+        byte outcome = this.state.gameOver() ? (byte) (TERMINAL | (this.state.getWinner() == this.player ? WON : 0)) : ONGOING;
+        if (outcome == ONGOING) {
+            for (int i = 0; i < GraphMonteCarloDecisionMaker.REPETITIVE_SIM_RATE; i++)
+                dWinFrequency += PentagoPlayout.play(this.state, this.playoutRandom) == this.player ? 1 : 0;
+            this.simulations++;
+        } else {
+            boolean won = (outcome & WON) != 0;
+            dTimeVisited *= won ? 1 : GraphMonteCarloDecisionMaker.LOSE_LEVER;
+            dWinFrequency = won ? dTimeVisited * GraphMonteCarloDecisionMaker.WIN_LEVER : 0;
+        }
+
+        for (int i = 0; i < depth; i++) {
+            this.edgeVisits[this.pathEdges[i]] += dTimeVisited;
+            this.edgeWins[this.pathEdges[i]] += dWinFrequency;
+        }
+        for (int i = 0; i <= depth; i++) {
+            int pathNode = this.pathNodes[i];
+            if (pathNode == NONE)
+                break;
+            this.visits[pathNode] += dTimeVisited;
+            this.wins[pathNode] += dWinFrequency;
+        }
+    }
+
+    /**
+     * Find the best move according to the win ratio of the root edges.
+     *
+     * @param node An expanded node.
+     * @return A packed move.
+     */
+    private int getMoveWithHighestWinRate(int node) {
+        double highestWinRate = Double.NEGATIVE_INFINITY;
+        int bestMove = NO_MOVE;
+        int first = this.firstEdge[node];
+        int end = first + this.edgeCount[node];
+        for (int edge = first; edge < end; edge++) {
+            int edgeVisits = this.edgeVisits[edge];
+            if (edgeVisits != 0 && (double) this.edgeWins[edge] / edgeVisits > highestWinRate) {
+                bestMove = this.edgeMove[edge];
+                highestWinRate = (double) this.edgeWins[edge] / edgeVisits;
+            }
+        }
+        return bestMove;
+    }
+}
@@ -0,0 +1,104 @@
+package student_player;
+
+import pentago_twist.FastRandom;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoPlayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Leaf-parallel rollout stage: the playouts of one leaf are split into batches that a pool of
+ * threads plays at the same time, and only the summed win count comes back to the tree.
+ * Every thread, the caller included, keeps its own random source for the playout kernel.
+ */
+public class LeafParallelRollouts {
+
+    private static final int DEFAULT_BATCH_SIZE = 5;
+    private static final long SEED = 2019;
+
+    private final ExecutorService pool;
+    private final int batchSize;
+    private final AtomicInteger seeds = new AtomicInteger();
+    private final ThreadLocal<RolloutBuffer> buffers = ThreadLocal.withInitial(RolloutBuffer::new);
+
+    /**
+     * @param threads Number of pool threads, besides the calling thread.
+     */
+    public LeafParallelRollouts(int threads) {
+        this(threads, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param threads   Number of pool threads, besides the calling thread.
+     * @param batchSize Number of playouts one thread plays per task.
+     */
+    public LeafParallelRollouts(int threads, int batchSize) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one rollout thread is needed: " + threads);
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        this.batchSize = batchSize;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-rollout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Play random games from a state and count the wins.
+     *
+     * @param state     The leaf state, only read.
+     * @param player    The player whose wins are counted.
+     * @param playouts  Number of games to play.
+     * @return Number of games won by player.
+     */
+    public int simulate(PentagoBoardState state, int player, int playouts) {
+        List<Future<Integer>> batches = new ArrayList<>();
+        int first = Math.min(this.batchSize, playouts);
+        for (int start = first; start < playouts; start += this.batchSize) {
+            int size = Math.min(this.batchSize, playouts - start);
+            batches.add(this.pool.submit(() -> this.buffers.get().play(state, player, size)));
+        }
+
+        // The calling thread plays the first batch instead of waiting idle.
+        int wins = this.buffers.get().play(state, player, first);
+        try {
+            for (Future<Integer> batch : batches)
+                wins += batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for rollouts", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rollout failed", e.getCause());
+        }
+        return wins;
+    }
+
+    /**
+     * Stop the pool threads.
+     */
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * Per-thread state of the rollout threads.
+     */
+    private class RolloutBuffer {
+        final FastRandom rand = new FastRandom(SEED + LeafParallelRollouts.this.seeds.getAndIncrement());
+
+        int play(PentagoBoardState state, int player, int playouts) {
+            int wins = 0;
+            for (int i = 0; i < playouts; i++)
+                wins += PentagoPlayout.play(state, this.rand) == player ? 1 : 0;
+            return wins;
+        }
+    }
+}
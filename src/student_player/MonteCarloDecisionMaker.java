@@ -1,36 +1,175 @@
 package student_player;
 
-import pentago_twist.PentagoBoardState.Piece;
+import boardgame.Server;
+import pentago_twist.FastRandom;
 import pentago_twist.PentagoBoardState;
 import pentago_twist.PentagoMove;
+import pentago_twist.PentagoPlayout;
+import pentago_twist.RolloutPolicy;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.DoubleUnaryOperator;
 
 public class MonteCarloDecisionMaker implements DecisionMaker {
 
     private Node root;
     private static final Integer SIM_LIMIT = Integer.MAX_VALUE;
-    private static final Long TIME_LIMIT = 1950L;
+    private static final Long MOVE_TIMEOUT = 2000L;
     private static final Integer REPETITIVE_SIM_RATE = 20;
     private static final Double UCT_CONST = Math.sqrt(2);
     private static final boolean SHOW_STAT = false;
     private static final Integer WIN_LEVER = 4;
     private static final Integer LOSE_LEVER = 4;
+    static final int NO_MOVE = -1;
+    private static final long DEFAULT_SEED = 2019;
+
+    // Children are created one at a time when selection first wants them, instead of all at expansion.
+    private static final boolean LAZY_EXPANSION = true;
+    // With progressive widening a node offers only WIDENING_CONSTANT * simulations ^ WIDENING_EXPONENT children.
+    private static final boolean PROGRESSIVE_WIDENING = false;
+    private static final double WIDENING_CONSTANT = 2.0;
+    private static final double WIDENING_EXPONENT = 0.5;
+
+    // RAVE: each node also counts, per cell, the playouts through it in which its player placed a
+    // marble there at any later point (all moves as first), and selection blends that rate into the
+    // child's own win rate with weight sqrt(K / (3 * visits + K)), K being RAVE_EQUIVALENCE visits.
+    // Lazily created children come in order of that rate instead of at random.
+    private static final boolean RAVE = true;
+    private static final int RAVE_EQUIVALENCE = 1000;
+    private static final int CELLS = PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE;
+
+    // MCTS-Solver: game-theoretic values known for sure, from the root player's side. A node is a
+    // proven win if its mover can pick a proven win (root player) or must allow one (opponent), and
+    // a proven loss the other way round. Draws and games running out of turns stay unproven, so that
+    // the search still tells them from losses. Selection skips proven children and the search
+    // stops once the root is proven.
+    static final byte UNPROVEN = 0;
+    static final byte PROVEN_WIN = 1;
+    static final byte PROVEN_LOSS = 2;
+
+    // Between two decisions the game moves on by our move and the opponent's reply.
+    private static final int REUSE_DEPTH = 2;
+    // Pondering stops by itself after the longest time the server gives the opponent.
+    private static final Long PONDER_LIMIT = (long) Server.DEFAULT_TIMEOUT;
+
+    // How often, in simulations of the calling thread, to ask the time manager for an early stop
+    // and to check the node budget.
+    private static final int STOP_CHECK_INTERVAL = 64;
+
+    // Memory bound: once the tree holds its node budget, the least visited subtrees below the root
+    // children are cut off until PRUNE_TARGET of the budget is left, and their nodes reused.
+    private static final double PRUNE_TARGET = 0.75;
+    // Average heap bytes per node, with its state, its statistics and its slots in the parent's
+    // child arrays, measured after 2-4 s searches on a 64-bit JVM with compressed references.
+    public static final int BYTES_PER_NODE = 190;
+
+    // Truncated rollouts: a playout stops after ROLLOUT_CUTOFF plies, 0 for never, and counts as won
+    // with the probability of its position by Evaluation.eval: the root player's evaluation minus the
+    // opponent's, through a logistic of scale EVAL_SCALE. That scale fits the outcome of full playouts
+    // from random positions best; the evaluation only tells them apart weakly.
+    private static final int ROLLOUT_CUTOFF = 0;
+    private static final double EVAL_SCALE = 1000;
+
+    // Tree-parallel search: workers share the tree and spread out with virtual loss.
+    private static final int DEFAULT_THREADS = 1;
+    private static final int VIRTUAL_LOSS = REPETITIVE_SIM_RATE;
+
+    private static final AtomicIntegerFieldUpdater<Node> TIME_VISITED =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "timeVisited");
+    private static final AtomicIntegerFieldUpdater<Node> WIN_FREQUENCY =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "winFrequency");
+    private static final AtomicIntegerFieldUpdater<Node> VIRTUAL_VISITS =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "virtualVisits");
+
+    // One per search thread; workers[0] runs on the calling thread.
+    private final Worker[] workers;
+    private final AtomicInteger simulations = new AtomicInteger();
+    private final long seed;
+    private volatile long deadline;
+    private volatile boolean stopped;
+    private TimeManager timeManager = new TimeManager(MOVE_TIMEOUT, MOVE_TIMEOUT);
+
+    // Whether the running search is a decision, which the time manager may stop early, and the
+    // root visits when it started.
+    private boolean budgeted;
+    private int rootVisitsAtStart;
+
+    // Background search on the opponent's time, if running.
+    private Thread ponderer;
+
+    // Node budget, free nodes to create children from, and the share of the heap the tree may use,
+    // 1 for no such limit. Past that share the tree is held to its size at the time, until a
+    // collection finds the heap below the share again; the collector count tells new measurements.
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final ArrayDeque<Node> freeNodes = new ArrayDeque<>();
+    private int nodeBudget = Integer.MAX_VALUE;
+    private double heapBudget = 1.0;
+    private int heapNodeLimit = Integer.MAX_VALUE;
+    private long collectionCount = -1;
+
+    // Optional pool that plays the REPETITIVE_SIM_RATE playouts of a leaf in parallel.
+    private LeafParallelRollouts leafRollouts;
+
+    // Expansion scheme, LAZY_EXPANSION and PROGRESSIVE_WIDENING unless a self-check changes it.
+    private boolean lazyExpansion = LAZY_EXPANSION;
+    private boolean progressiveWidening = PROGRESSIVE_WIDENING;
+
+    // How the playouts of the searching threads pick their moves, and where they stop.
+    private RolloutPolicy rolloutPolicy = RolloutPolicy.UNIFORM;
+    private int rolloutCutoff = ROLLOUT_CUTOFF;
+    private DoubleUnaryOperator evalToWinProbability = logistic(EVAL_SCALE);
 
     public MonteCarloDecisionMaker(PentagoBoardState state) {
-        this.root = new Node(null, state, null, 0, state.getTurnPlayer());
-        this.root.initializeChildren();
+        this(state, DEFAULT_THREADS);
+    }
+
+    /**
+     * @param state   The position to move in.
+     * @param threads Number of threads searching the shared tree.
+     */
+    public MonteCarloDecisionMaker(PentagoBoardState state, int threads) {
+        this(state, threads, DEFAULT_SEED);
+    }
+
+    /**
+     * @param state   The position to move in.
+     * @param threads Number of threads searching the shared tree.
+     * @param seed    Seed of the expansion order and rollouts, so independent trees can differ.
+     */
+    MonteCarloDecisionMaker(PentagoBoardState state, int threads, long seed) {
+        if (threads < 1)
+            throw new IllegalArgumentException("At least one search thread is needed: " + threads);
+        this.seed = seed;
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++)
+            this.workers[i] = new Worker(seed + i);
+        // A copy: the caller's state may be the live board, which the game goes on changing.
+        this.root = new Node(NO_MOVE, (PentagoBoardState) state.clone(), null, 0, state.getTurnPlayer());
+        this.nodeCount.set(1);
+        this.root.initializeChildren(this.workers[0]);
     }
 
     @Override
     public PentagoMove makeDecision() {
 
+        // The ponderer's workers expand nodes with these buffers, so it must stop first.
+        stopPondering();
+
         // If we can win in one round, return.
-        for (Node child : this.root.children)
-            if (child.state.gameOver() && child.state.getWinner() == this.root.state.getTurnPlayer())
-                return child.move;
+        int[] winningMoves = this.workers[0].expansionMoves;
+        if (this.root.state.getWinningMoves(winningMoves) > 0)
+            return PentagoMove.unpack(winningMoves[0]);
 
-        return monteCarloTreeSearch();
+        int move = monteCarloTreeSearch();
+        return move == NO_MOVE ? null : PentagoMove.unpack(move);
     }
 
     /**
@@ -52,43 +191,485 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
     }
 
     /**
-     * Monte Carlo Tree Search Algorithm.
+     * Move the root to the node of a position reached since the last search, keeping the
+     * statistics of its subtree and releasing the rest of the tree. If the tree never reached
+     * the position, or searched for the other player, start a new tree from it instead.
+     *
+     * @param state The position to move in next.
+     * @return True if the subtree was found and kept.
+     */
+    public boolean reuseSubtree(PentagoBoardState state) {
+        stopPondering();
+        Node node = state.getTurnPlayer() == this.root.player
+                ? findNode(this.root, state, MonteCarloDecisionMaker.REUSE_DEPTH) : null;
+        if (node == null) {
+            this.root = new Node(NO_MOVE, (PentagoBoardState) state.clone(), null, 0, state.getTurnPlayer());
+            this.nodeCount.set(1);
+            this.root.initializeChildren(this.workers[0]);
+            return false;
+        }
+
+        // Cutting the parent link leaves the rest of the old tree unreachable.
+        node.parent = null;
+        this.root = node;
+        this.nodeCount.set(getTreeSize(node));
+        this.root.initializeChildren(this.workers[0]);
+        return true;
+    }
+
+    /**
+     * Find the node of a position among the descendants of a node.
+     *
+     * @param node  A node.
+     * @param state The position to look for.
+     * @param depth How many plies below node to look.
+     * @return The node, or null if it is not in the tree.
+     */
+    private static Node findNode(Node node, PentagoBoardState state, int depth) {
+        if (node.state.equals(state))
+            return node;
+        if (depth == 0)
+            return null;
+        for (Node child : node.getChildren()) {
+            Node found = findNode(child, state, depth - 1);
+            if (found != null)
+                return found;
+        }
+        return null;
+    }
+
+    /**
+     * Keep searching in the background while the opponent thinks: move the root to the position
+     * our move led to and grow its subtree until stopPondering(), reuseSubtree() or the next search.
+     * The subtree of the reply that comes is then kept by reuseSubtree(), the rest released.
+     *
+     * @param state The position after our move, with the opponent to move. It is only compared
+     *              with the tree before the search starts, never kept, so it may be the live board.
+     * @return False if the tree does not have that position, in which case nothing runs.
+     */
+    public boolean startPondering(PentagoBoardState state) {
+        stopPondering();
+        Node node = state.gameOver() ? null : findNode(this.root, state, 1);
+        if (node == null)
+            return false;
+
+        node.parent = null;
+        this.root = node;
+        this.nodeCount.set(getTreeSize(node));
+        this.root.initializeChildren(this.workers[0]);
+        if (isOverBudget())
+            prune();
+
+        // Set before the thread starts, so that a stop request cannot be overwritten.
+        this.deadline = System.nanoTime() + MonteCarloDecisionMaker.PONDER_LIMIT * 1000000L;
+        this.stopped = false;
+        this.budgeted = false;
+        this.ponderer = new Thread(this::runWorkers, "mcts-ponder");
+        this.ponderer.setDaemon(true);
+        this.ponderer.start();
+        return true;
+    }
+
+    /**
+     * Stop the background search, if any, and wait for it to leave the tree.
+     */
+    public void stopPondering() {
+        Thread ponderer = this.ponderer;
+        if (ponderer == null)
+            return;
+        this.stopped = true;
+        try {
+            ponderer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.ponderer = null;
+    }
+
+    /**
+     * Budget each decision with a time manager instead of a fixed MOVE_TIMEOUT per move.
      *
-     * @return A move.
+     * @param timeManager A time manager, only used by this engine.
      */
-    private PentagoMove monteCarloTreeSearch() {
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
 
-        long startTime = System.currentTimeMillis();
+    /**
+     * Bound the tree to a number of nodes. At the budget, the least visited subtrees are cut off
+     * and their nodes reused. With one search thread this happens during the search, with more
+     * only between searches. Size it with BYTES_PER_NODE.
+     *
+     * @param nodeBudget Maximum number of nodes.
+     */
+    public void setNodeBudget(int nodeBudget) {
+        if (nodeBudget < 1)
+            throw new IllegalArgumentException("Node budget must be positive: " + nodeBudget);
+        this.nodeBudget = nodeBudget;
+    }
 
-        // Run simulations.
-        int i;
-        for (i = 0; i < MonteCarloDecisionMaker.SIM_LIMIT; i++) {
-            Node node = root;
+    /**
+     * Bound the tree to a share of the maximum heap: when the heap in use after the last
+     * collection passes it while no freed node is left, the tree is held to its current size
+     * until a later collection finds the heap below the share, e.g. once an old tree is released.
+     *
+     * @param heapBudget Share of Runtime.maxMemory(), in (0, 1].
+     */
+    public void setHeapBudget(double heapBudget) {
+        if (!(heapBudget > 0 && heapBudget <= 1))
+            throw new IllegalArgumentException("Heap budget must be in (0, 1]: " + heapBudget);
+        this.heapBudget = heapBudget;
+    }
 
-            // A manual time limit.
-            if (System.currentTimeMillis() - startTime >= MonteCarloDecisionMaker.TIME_LIMIT)
-                break;
+    /**
+     * Number of nodes in the tree, not counting freed nodes waiting for reuse.
+     *
+     * @return Node count.
+     */
+    public int getNodeCount() {
+        return this.nodeCount.get();
+    }
 
-            while (!node.isLeaf())
-                node = node.getNextPossibleNode();
+    /**
+     * Freed nodes waiting for reuse.
+     *
+     * @return A copy of the free list.
+     */
+    List<Node> getFreeNodes() {
+        synchronized (this.freeNodes) {
+            return new ArrayList<>(this.freeNodes);
+        }
+    }
 
-            if (node.timeVisited != 0 && !node.isOver()) {
-                node.initializeChildren();
-                node = node.getNextPossibleNode();
+    /**
+     * Check the node budget, first updating the limit of the heap budget if a collection ran
+     * since the last check.
+     *
+     * @return True if the tree should be pruned.
+     */
+    private boolean isOverBudget() {
+        int nodes = this.nodeCount.get();
+        if (this.heapBudget < 1 && this.freeNodes.isEmpty()) {
+            long collections = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+                collections += Math.max(0, collector.getCollectionCount());
+            if (collections != this.collectionCount) {
+                this.collectionCount = collections;
+                this.heapNodeLimit = getHeapUsedAfterCollection() > this.heapBudget * Runtime.getRuntime().maxMemory()
+                        ? nodes : Integer.MAX_VALUE;
             }
-            node.simulate();
         }
+        return nodes >= getEffectiveNodeBudget();
+    }
+
+    /**
+     * @return The node budget, or the limit of the heap budget if lower.
+     */
+    private int getEffectiveNodeBudget() {
+        return Math.min(this.nodeBudget, this.heapNodeLimit);
+    }
+
+    /**
+     * Heap in use right after the last collection of each heap pool, so that garbage does not
+     * count. Pools that do not report it count with their current use.
+     *
+     * @return Bytes.
+     */
+    private static long getHeapUsedAfterCollection() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP)
+                continue;
+            MemoryUsage usage = pool.getCollectionUsage();
+            used += (usage != null ? usage : pool.getUsage()).getUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Cut off the least visited subtrees until PRUNE_TARGET of the node budget is left, keeping
+     * the root and its children, and free their nodes. No other thread may be in the tree.
+     */
+    void prune() {
+        // Visits of the nodes that may go, least first.
+        int[] visits = new int[this.nodeCount.get()];
+        int count = 0;
+        Deque<Node> stack = new ArrayDeque<>(this.root.getChildren());
+        while (!stack.isEmpty())
+            for (Node child : stack.pop().getChildren()) {
+                visits[count++] = child.timeVisited;
+                stack.push(child);
+            }
+        Arrays.sort(visits, 0, count);
+
+        // Cut everything visited less than the threshold, and nodes visited exactly that much while
+        // above the target. A subtree has no more visits than its root, so this keeps a connected
+        // tree of about the target size.
+        int target = (int) (MonteCarloDecisionMaker.PRUNE_TARGET * getEffectiveNodeBudget());
+        int excess = this.nodeCount.get() - target;
+        if (excess <= 0 || count == 0)
+            return;
+        int threshold = visits[Math.min(excess, count) - 1];
+        stack.addAll(this.root.getChildren());
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            for (int i = node.childCount - 1; i >= 0; i--) {
+                Node child = node.children[i];
+                if (child.timeVisited < threshold || (child.timeVisited == threshold && this.nodeCount.get() > target))
+                    node.removeChild(i);
+                else
+                    stack.push(child);
+            }
+        }
+    }
+
+    /**
+     * Get a node for a new child, reusing a freed one if there is any.
+     *
+     * @param move   The move from the parent.
+     * @param parent The parent.
+     * @return The node, with the parent's state after the move.
+     */
+    private Node newNode(int move, Node parent) {
+        Node node;
+        synchronized (this.freeNodes) {
+            node = this.freeNodes.poll();
+        }
+        if (node == null) {
+            node = new Node(move, (PentagoBoardState) parent.state.clone(), parent, parent.depth + 1, parent.player);
+        } else {
+            node.reset(move, parent);
+        }
+        node.state.applyMove(move);
+        this.nodeCount.incrementAndGet();
+        return node;
+    }
+
+    /**
+     * Free the nodes of a subtree for reuse.
+     *
+     * @param node A node cut off from the tree.
+     */
+    private void freeSubtree(Node node) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node freed = stack.pop();
+            for (int i = 0; i < freed.childCount; i++)
+                stack.push(freed.children[i]);
+            freed.children = null;
+            freed.childMoves = null;
+            freed.childCount = 0;
+            freed.parent = null;
+            synchronized (this.freeNodes) {
+                this.freeNodes.push(freed);
+            }
+            this.nodeCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Choose how nodes create their children, for the checks that must cover every scheme.
+     *
+     * @param lazyExpansion       Create children one at a time when selection first wants them.
+     * @param progressiveWidening Offer a number of children growing with the simulations.
+     */
+    void setExpansion(boolean lazyExpansion, boolean progressiveWidening) {
+        this.lazyExpansion = lazyExpansion;
+        this.progressiveWidening = progressiveWidening;
+    }
+
+    /**
+     * Play the playouts of each leaf on a rollout pool instead of the searching thread.
+     *
+     * @param leafRollouts A rollout pool, or null to play them on the searching thread.
+     */
+    public void setLeafParallelRollouts(LeafParallelRollouts leafRollouts) {
+        this.leafRollouts = leafRollouts;
+    }
+
+    /**
+     * Pick the moves of the playouts with another policy, e.g. RolloutPolicy.HEAVY. A rollout
+     * pool set with setLeafParallelRollouts keeps its own uniform playouts.
+     *
+     * @param rolloutPolicy A rollout policy, safe to call from several threads at once.
+     */
+    public void setRolloutPolicy(RolloutPolicy rolloutPolicy) {
+        if (rolloutPolicy == null)
+            throw new IllegalArgumentException("Rollout policy must not be null");
+        this.rolloutPolicy = rolloutPolicy;
+    }
+
+    /**
+     * Stop each playout after a number of plies and count it as won with the probability the
+     * mapping gives Evaluation.eval of its position, instead of playing it to the end. Truncated
+     * playouts are those of PentagoPlayout, whatever the rollout policy; a rollout pool
+     * set with setLeafParallelRollouts still plays to the end.
+     *
+     * @param plies                Plies before the cutoff, 0 to play every playout to the end.
+     * @param evalToWinProbability Maps the root player's evaluation minus the opponent's to a
+     *                             probability in [0, 1], e.g. logistic(scale); safe to call from
+     *                             several threads at once.
+     */
+    public void setTruncatedRollouts(int plies, DoubleUnaryOperator evalToWinProbability) {
+        if (plies < 0)
+            throw new IllegalArgumentException("Rollout cutoff must not be negative: " + plies);
+        if (evalToWinProbability == null)
+            throw new IllegalArgumentException("Evaluation mapping must not be null");
+        this.rolloutCutoff = plies;
+        this.evalToWinProbability = evalToWinProbability;
+    }
+
+    /**
+     * Logistic mapping of an evaluation difference to a win probability, 0.5 at 0.
+     *
+     * @param scale Difference at which the probability reaches 1 / (1 + e^-1), about 0.73.
+     * @return The mapping.
+     */
+    public static DoubleUnaryOperator logistic(double scale) {
+        if (!(scale > 0))
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        return eval -> 1.0 / (1.0 + Math.exp(-eval / scale));
+    }
+
+    /**
+     * Monte Carlo Tree Search Algorithm.
+     *
+     * @return A packed move.
+     */
+    private int monteCarloTreeSearch() {
+
+        search();
 
         // Retrieve result.
         if (MonteCarloDecisionMaker.SHOW_STAT)
             System.out.print(
                     "TREE SIZE: " + getTreeSize(this.root) +
-                            " SIM TURN: " + i +
+                            " SIM TURN: " + this.simulations.get() +
                             " TREE HEIGHT: " + getTreeHeight(this.root) +
+                            " PROVEN: " + this.root.proven +
                             "\n");
         return this.root.getMoveWithHighestWinRate();
     }
 
+    /**
+     * Grow the tree until the time limit.
+     */
+    void search() {
+
+        stopPondering();
+        if (isOverBudget())
+            prune();
+        this.timeManager.startTurn(this.root.state.getTurnNumber());
+        this.deadline = this.timeManager.getDeadline();
+        this.stopped = false;
+        this.budgeted = true;
+        this.rootVisitsAtStart = this.root.timeVisited;
+        this.simulations.set(0);
+        runWorkers();
+    }
+
+    /**
+     * Ask the time manager whether to stop, telling it whether the move to play is settled, see
+     * RootStatistics.isSettled().
+     *
+     * @return True if the search can stop.
+     */
+    private boolean shouldStopEarly() {
+        RootStatistics statistics = getRootStatistics();
+        long visitsLeft = this.timeManager.visitsLeft(getNewRootVisits());
+        return this.timeManager.shouldStop(statistics.getBestMove(), statistics.isSettled(visitsLeft));
+    }
+
+    /**
+     * Grow the tree until a deadline set by the caller, without stopping early: for searches
+     * that someone else decides to stop, with requestStop().
+     *
+     * @param deadline Deadline on the System.nanoTime() clock.
+     */
+    void searchUntil(long deadline) {
+        stopPondering();
+        if (isOverBudget())
+            prune();
+        this.deadline = deadline;
+        this.stopped = false;
+        this.budgeted = false;
+        this.rootVisitsAtStart = this.root.timeVisited;
+        this.simulations.set(0);
+        runWorkers();
+    }
+
+    /**
+     * Ask a running search to stop soon, from any thread.
+     */
+    void requestStop() {
+        this.stopped = true;
+    }
+
+    /**
+     * @return Visits the root got since the current search started.
+     */
+    long getNewRootVisits() {
+        return this.root.timeVisited - this.rootVisitsAtStart;
+    }
+
+    /**
+     * Copy the statistics of the root children, which the search may still be updating.
+     *
+     * @return A snapshot.
+     */
+    RootStatistics getRootStatistics() {
+        Node root = this.root;
+        RootStatistics statistics = new RootStatistics(root.childMoves == null ? 0 : root.childMoves.length);
+        for (Node child : root.getChildren())
+            statistics.add(child.move, child.timeVisited, child.winFrequency, child.proven);
+        return statistics;
+    }
+
+    /**
+     * Grow the tree until the deadline, the calling thread being the first worker.
+     */
+    private void runWorkers() {
+        Thread[] threads = new Thread[this.workers.length - 1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(this.workers[i + 1], "mcts-worker-" + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        this.workers[0].run();
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Add the root children statistics of another tree of the same position to this one's.
+     *
+     * @param other A searched tree with the same root state.
+     */
+    void mergeRootStatistics(MonteCarloDecisionMaker other) {
+        // The other tree may have created root children this one has not.
+        while (this.root.createNextChild() != null);
+        Map<Integer, Node> children = new HashMap<>();
+        for (Node child : this.root.getChildren())
+            children.put(child.move, child);
+        for (Node child : other.root.getChildren()) {
+            Node mine = children.get(child.move);
+            if (mine == null)
+                throw new IllegalArgumentException("Trees do not share the root position");
+            mine.timeVisited += child.timeVisited;
+            mine.winFrequency += child.winFrequency;
+            if (child.proven != UNPROVEN)
+                mine.proven = child.proven;
+        }
+        this.root.timeVisited += other.root.timeVisited;
+        this.root.winFrequency += other.root.winFrequency;
+    }
+
     /**
      * Find the size of the tree.
      *
@@ -99,7 +680,7 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
         if (node == null)
             return 0;
         int total = 1;
-        for (Node child : node.children)
+        for (Node child : node.getChildren())
             total += getTreeSize(child);
         return total;
     }
@@ -115,29 +696,106 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
             return 0;
 
         int maxSubTreeHeight = 0;
-        for (Node child : node.children)
+        for (Node child : node.getChildren())
             maxSubTreeHeight = Math.max(maxSubTreeHeight, getTreeHeight(child));
 
         return maxSubTreeHeight + 1;
     }
 
+    /**
+     * Number of simulations run by the last search, over all threads.
+     *
+     * @return Simulation count.
+     */
+    public int getSimulationCount() {
+        return this.simulations.get();
+    }
+
+    /**
+     * Per-thread search state: expansion buffer and random sources.
+     */
+    private class Worker implements Runnable {
+        // Packed moves, for expansion.
+        final int[] expansionMoves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+
+        // Expansion order, and the much cheaper generator of the playouts.
+        final Random rand;
+        final FastRandom playoutRandom;
+
+        // Cells each colour placed on in one playout, and per colour and cell the playouts of the
+        // current leaf that placed there and those of them that were won.
+        final long[] placements = new long[2];
+        final int[] amafVisits = new int[2 * CELLS];
+        final int[] amafWins = new int[2 * CELLS];
+
+        // Position where a truncated playout stopped, as colour masks.
+        final long[] cutoffMasks = new long[2];
+
+        Worker(long seed) {
+            this.rand = new Random(seed);
+            this.playoutRandom = new FastRandom(seed);
+        }
+
+        @Override
+        public void run() {
+            Node root = MonteCarloDecisionMaker.this.root;
+            AtomicInteger simulations = MonteCarloDecisionMaker.this.simulations;
+            boolean decides = this == MonteCarloDecisionMaker.this.workers[0] && MonteCarloDecisionMaker.this.budgeted;
+            boolean alone = MonteCarloDecisionMaker.this.workers.length == 1;
+            for (int runs = 1; simulations.get() < MonteCarloDecisionMaker.SIM_LIMIT; runs++) {
+                Node node = root;
+
+                // A manual time limit, and early stops requested by the calling thread.
+                if (MonteCarloDecisionMaker.this.stopped || System.nanoTime() - MonteCarloDecisionMaker.this.deadline >= 0)
+                    break;
+                if (decides && runs % MonteCarloDecisionMaker.STOP_CHECK_INTERVAL == 0 && shouldStopEarly()) {
+                    MonteCarloDecisionMaker.this.stopped = true;
+                    break;
+                }
+                if (alone && runs % MonteCarloDecisionMaker.STOP_CHECK_INTERVAL == 0 && isOverBudget())
+                    prune();
+
+                // Nothing left to learn once the outcome is known.
+                if (root.proven != UNPROVEN)
+                    break;
+
+                while (!node.isLeaf())
+                    node = node.getNextPossibleNode();
+
+                if (node.timeVisited != 0 && !node.isOver()) {
+                    node.initializeChildren(this);
+                    node = node.getNextPossibleNode();
+                }
+                node.simulate(this);
+                simulations.incrementAndGet();
+            }
+        }
+    }
+
     class Node {
-        // Node value.
-        PentagoBoardState state;
-        PentagoMove move;
-        Integer timeVisited;
-        Integer winFrequency;
-        Integer depth;
-        Integer player;
-
-        // Node topology.
+        // Node value. The state belongs to the node, a copy made for it and only ever overwritten
+        // by reset(), so that searching threads never read the board a caller keeps changing.
+        final PentagoBoardState state;
+        int move;
+        volatile int timeVisited;
+        volatile int winFrequency;
+        volatile int virtualVisits; // Visits of searches still on their way through this node, counted as losses.
+        volatile byte proven = UNPROVEN;
+        int depth;
+        int player;
+
+        // Node topology. After expansion, children[0 .. childCount) exist and the other
+        // slots are created in order from the moves in childMoves.
         Node parent;
-        ArrayList<Node> children;
+        volatile Node[] children;
+        volatile int childCount;
+        int[] childMoves;
 
-        // Utility.
-        Random rand;
+        // All-moves-as-first counts of this node's player, created with the children:
+        // playouts at [cell] and wins at [CELLS + cell].
+        AtomicIntegerArray amaf;
 
-        public Node(PentagoMove move, PentagoBoardState state, Node parent, Integer depth, Integer player) {
+        public Node(int move, PentagoBoardState state, Node parent, int depth, int player) {
             this.move = move;
             this.state = state;
             this.timeVisited = 0;
@@ -145,62 +803,262 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
             this.parent = parent;
             this.depth = depth;
             this.player = player;
-            this.rand = new Random(2019);
-            this.children = new ArrayList<>();
         }
 
         boolean isLeaf() {
-            return this.children.isEmpty();
+            return this.children == null;
+        }
+
+        /**
+         * The children created so far.
+         *
+         * @return A read-only list, empty for a leaf.
+         */
+        List<Node> getChildren() {
+            Node[] children = this.children;
+            if (children == null)
+                return Collections.emptyList();
+            return Collections.unmodifiableList(Arrays.asList(children).subList(0, this.childCount));
         }
 
         /**
-         * Expand this node.
+         * Expand this node: list its moves in random order, and unless expansion is lazy create
+         * every child. Threads racing to expand the same node wait for the first one.
+         *
+         * @param worker The expanding thread's buffers.
          */
-        void initializeChildren() {
+        synchronized void initializeChildren(Worker worker) {
             if (isLeaf()) {
-                HashSet<String> recordedChildren = new HashSet<>();
-                ArrayList<PentagoMove> moves = state.getAllLegalMoves();
-
-                while (!moves.isEmpty()) {
-                    PentagoMove move = moves.remove(rand.nextInt(moves.size()));
-
-                    PentagoBoardState clonedState = (PentagoBoardState) state.clone();
-                    clonedState.processMove(move);
-                    if (recordedChildren.contains(clonedState.toString())) continue;
-                    recordedChildren.add(clonedState.toString());
-
-                    Node newNode = new Node(
-                            move,
-                            clonedState,
-                            this,
-                            this.depth + 1,
-                            player
-                    );
-
-                    // If already win, just return.
-                    if (newNode.isOver()) {
-                        newNode.timeVisited = MonteCarloDecisionMaker.REPETITIVE_SIM_RATE;
-                        newNode.winFrequency = newNode.state.getWinner() == this.player ? newNode.timeVisited : 0;
-                    }
+                // One move per distinct resulting position. A player with a winning move plays one:
+                // the other moves need no search, and the node is proven with its first child.
+                int[] moves = worker.expansionMoves;
+                int remaining = state.getWinningMoves(moves);
+                if (remaining == 0)
+                    remaining = state.getDistinctSuccessors(moves);
+                int[] childMoves = new int[remaining];
 
-                    this.children.add(newNode);
+                for (int i = 0; remaining > 0; i++) {
+                    // Draw the moves in random order.
+                    int pick = worker.rand.nextInt(remaining);
+                    childMoves[i] = moves[pick];
+                    moves[pick] = moves[--remaining];
                 }
+                this.childMoves = childMoves;
+                if (MonteCarloDecisionMaker.RAVE && this.amaf == null)
+                    this.amaf = new AtomicIntegerArray(2 * CELLS);
+                else if (MonteCarloDecisionMaker.RAVE)
+                    for (int i = 0; i < 2 * CELLS; i++)
+                        this.amaf.set(i, 0);
+                this.children = new Node[childMoves.length];
+
+                if (!MonteCarloDecisionMaker.this.lazyExpansion && !MonteCarloDecisionMaker.this.progressiveWidening)
+                    while (createNextChild() != null);
+            }
+        }
+
+        /**
+         * Create the next child of an expanded node.
+         *
+         * @return The new child, or null if every child exists.
+         */
+        synchronized Node createNextChild() {
+            int index = this.childCount;
+            if (this.children == null || index == this.childMoves.length)
+                return null;
+
+            if (MonteCarloDecisionMaker.RAVE)
+                swapInBestAmafMove(index);
+            Node newNode = MonteCarloDecisionMaker.this.newNode(this.childMoves[index], this);
+
+            // If already win, just return.
+            if (newNode.isOver()) {
+                newNode.timeVisited = MonteCarloDecisionMaker.REPETITIVE_SIM_RATE;
+                newNode.winFrequency = newNode.state.getWinner() == this.player ? newNode.timeVisited : 0;
+                int winner = newNode.state.getWinner();
+                if (winner == this.player)
+                    newNode.proven = PROVEN_WIN;
+                else if (winner == 1 - this.player)
+                    newNode.proven = PROVEN_LOSS;
+            }
+
+            // Publish the child before the count that makes it visible.
+            this.children[index] = newNode;
+            this.childCount = index + 1;
+            if (newNode.proven != UNPROVEN)
+                propagateProof();
+            return newNode;
+        }
+
+        /**
+         * Make a freed node a new child.
+         *
+         * @param move   The move from the parent.
+         * @param parent The parent, whose state this node's state is set to.
+         */
+        void reset(int move, Node parent) {
+            this.move = move;
+            this.state.copyFrom(parent.state);
+            this.timeVisited = 0;
+            this.winFrequency = 0;
+            this.virtualVisits = 0;
+            this.proven = UNPROVEN;
+            this.parent = parent;
+            this.depth = parent.depth + 1;
+            this.player = parent.player;
+        }
+
+        /**
+         * Cut off a child and free its subtree. Its move goes back among the moves without a
+         * child, so that it can be created again. No other thread may be in the tree.
+         *
+         * @param index Index of the child.
+         */
+        void removeChild(int index) {
+            Node child = this.children[index];
+            int last = this.childCount - 1;
+            this.children[index] = this.children[last];
+            this.children[last] = null;
+            int move = this.childMoves[index];
+            this.childMoves[index] = this.childMoves[last];
+            this.childMoves[last] = move;
+            this.childCount = last;
+            MonteCarloDecisionMaker.this.freeSubtree(child);
+        }
+
+        /**
+         * Work out the proven value of this node from its children.
+         *
+         * @return PROVEN_WIN, PROVEN_LOSS, or UNPROVEN while some child is unproven or not created yet.
+         */
+        byte solve() {
+            boolean rootToMove = this.state.getTurnPlayer() == this.player;
+            byte good = rootToMove ? PROVEN_WIN : PROVEN_LOSS;
+            Node[] children = this.children;
+            int childCount = this.childCount;
+            if (children == null)
+                return UNPROVEN;
+
+            boolean allBad = childCount == children.length;
+            for (int i = 0; i < childCount; i++) {
+                byte proven = children[i].proven;
+                if (proven == good)
+                    return good;
+                if (proven == UNPROVEN)
+                    allBad = false;
+            }
+            return allBad ? (rootToMove ? PROVEN_LOSS : PROVEN_WIN) : UNPROVEN;
+        }
+
+        /**
+         * After a child got proven, prove this node and its ancestors as far as the proof goes.
+         */
+        void propagateProof() {
+            Node root = MonteCarloDecisionMaker.this.root;
+            for (Node node = this; node != null; node = node.parent) {
+                byte proven = node.solve();
+                if (proven == UNPROVEN)
+                    return;
+                node.proven = proven;
+                if (node == root)
+                    return;
             }
         }
 
         /**
-         * Fetch the best node according to their UCT.
+         * Move the not yet created move with the best all-moves-as-first win rate to a slot.
+         *
+         * @param index First move without a child.
+         */
+        private void swapInBestAmafMove(int index) {
+            int best = index;
+            double bestRate = Double.NEGATIVE_INFINITY;
+            for (int i = index; i < this.childMoves.length; i++) {
+                double rate = amafRate(PentagoMove.packedCell(this.childMoves[i]));
+                if (rate > bestRate) {
+                    best = i;
+                    bestRate = rate;
+                }
+            }
+            int move = this.childMoves[best];
+            this.childMoves[best] = this.childMoves[index];
+            this.childMoves[index] = move;
+        }
+
+        /**
+         * All-moves-as-first win rate of this node's player placing on a cell.
+         *
+         * @param cell A cell index.
+         * @return The rate, 0 if no playout placed there yet.
+         */
+        double amafRate(int cell) {
+            int visits = this.amaf.get(cell);
+            return visits == 0 ? 0.0 : (double) this.amaf.get(CELLS + cell) / visits;
+        }
+
+        /**
+         * Number of children selection may choose from: all of them, or with progressive
+         * widening a number growing with the simulations run through this node.
+         *
+         * @return Allowed child count.
+         */
+        int getWidth() {
+            int total = this.childMoves.length;
+            if (!MonteCarloDecisionMaker.this.progressiveWidening)
+                return total;
+            double simulations = (double) this.timeVisited / MonteCarloDecisionMaker.REPETITIVE_SIM_RATE;
+            int width = (int) Math.ceil(MonteCarloDecisionMaker.WIDENING_CONSTANT * Math.pow(simulations, MonteCarloDecisionMaker.WIDENING_EXPONENT));
+            return Math.max(1, Math.min(total, width));
+        }
+
+        /**
+         * Fetch the next child not created yet if the width allows it, which is what UCT would
+         * pick since unvisited children come first, otherwise the best node according to their UCT.
+         * Either way add a virtual loss to it so that other threads prefer its siblings until this
+         * search backs up.
          *
          * @return The best node.
          */
         Node getNextPossibleNode() {
+            Node bestNode = null;
+            if (this.childCount < getWidth())
+                bestNode = createNextChild();
+            if (bestNode == null)
+                bestNode = getBestChild(true);
+
+            // Every child within the width is proven: widen, or if this node is being proven by
+            // another thread at the same time, fall back to the proven children.
+            if (bestNode == null)
+                bestNode = createNextChild();
+            if (bestNode == null)
+                bestNode = getBestChild(false);
+
+            if (bestNode != null)
+                VIRTUAL_VISITS.addAndGet(bestNode, MonteCarloDecisionMaker.VIRTUAL_LOSS);
+            return bestNode;
+        }
+
+        /**
+         * Fetch the created child with the best UCT.
+         *
+         * @param skipProven Leave out proven children, whose value is known without searching.
+         * @return The best node, or null if there is none.
+         */
+        private Node getBestChild(boolean skipProven) {
             Node bestNode = null;
             double bestUCT = Double.NEGATIVE_INFINITY;
-            for (Node n : this.children)
-                if (UCT(n, this.timeVisited) > bestUCT) {
+            int parentTimeVisited = this.timeVisited;
+            Node[] children = this.children;
+            int childCount = this.childCount;
+            for (int i = 0; i < childCount; i++) {
+                Node n = children[i];
+                if (skipProven && n.proven != UNPROVEN)
+                    continue;
+                double uct = UCT(n, parentTimeVisited);
+                if (uct > bestUCT) {
                     bestNode = n;
-                    bestUCT = UCT(n, this.timeVisited);
+                    bestUCT = uct;
                 }
+            }
             return bestNode;
         }
 
@@ -217,19 +1075,38 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
          * Run a simulation if this is a leaf.
          * Then backtrack to the root and update
          * all relevant information.
+         *
+         * @param worker The simulating thread's buffers.
          */
-        void simulate() {
+        void simulate(Worker worker) {
 
             int dTimeVisited = MonteCarloDecisionMaker.REPETITIVE_SIM_RATE, dWinFrequency = 0;
 
-            if (!this.isOver()) {
-                // Run simulation.
+            LeafParallelRollouts leafRollouts = MonteCarloDecisionMaker.this.leafRollouts;
+            RolloutPolicy rolloutPolicy = MonteCarloDecisionMaker.this.rolloutPolicy;
+            int cutoff = MonteCarloDecisionMaker.this.rolloutCutoff;
+            if (!this.isOver() && leafRollouts != null) {
+                dWinFrequency = leafRollouts.simulate(this.state, this.player, MonteCarloDecisionMaker.REPETITIVE_SIM_RATE);
+            } else if (!this.isOver() && MonteCarloDecisionMaker.RAVE) {
+                // Also count where each colour placed its marbles in every playout.
+                Arrays.fill(worker.amafVisits, 0);
+                Arrays.fill(worker.amafWins, 0);
                 for (int i = 0; i < MonteCarloDecisionMaker.REPETITIVE_SIM_RATE; i++) {
-                    PentagoBoardState clonedState = (PentagoBoardState) state.clone();
-                    while (!clonedState.gameOver())
-                        clonedState.processMove(getRandomMove(clonedState));
-                    dWinFrequency += clonedState.getWinner() == this.player ? 1 : 0;
+                    int won = cutoff > 0 ? playTruncated(worker, cutoff)
+                            : rolloutPolicy.play(this.state, worker.playoutRandom, worker.placements) == this.player ? 1 : 0;
+                    dWinFrequency += won;
+                    for (int colour = 0; colour < 2; colour++)
+                        for (long cells = worker.placements[colour]; cells != 0; cells &= cells - 1) {
+                            int cell = colour * CELLS + Long.numberOfTrailingZeros(cells);
+                            worker.amafVisits[cell]++;
+                            worker.amafWins[cell] += won;
+                        }
                 }
+            } else if (!this.isOver()) {
+                // Run simulation with the playout kernel, which only reads this node's state.
+                for (int i = 0; i < MonteCarloDecisionMaker.REPETITIVE_SIM_RATE; i++)
+                    dWinFrequency += cutoff > 0 ? playTruncated(worker, cutoff)
+                            : rolloutPolicy.play(this.state, worker.playoutRandom, null) == this.player ? 1 : 0;
 //                dWinFrequency *= MonteCarloDecisionMaker.WIN_LEVER;
             } else {
                 dTimeVisited *= this.state.getWinner() == this.player ? 1 : MonteCarloDecisionMaker.LOSE_LEVER;
@@ -238,62 +1115,103 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
 
             // Update tree.
             updateTree(dTimeVisited, dWinFrequency, this);
+            if (MonteCarloDecisionMaker.RAVE)
+                updateAmaf(dTimeVisited, dWinFrequency, worker, !this.isOver() && leafRollouts == null);
+        }
+
+        /**
+         * Play one uniformly random playout from this node's state, stopping after a number of
+         * plies, with the placements recorded as the rollout policies do.
+         *
+         * @param worker The simulating thread's buffers.
+         * @param cutoff Plies before the cutoff.
+         * @return 1 if the root player won, or at the cutoff with the win probability of the
+         * position; else 0.
+         */
+        private int playTruncated(Worker worker, int cutoff) {
+            int winner = PentagoPlayout.play(this.state, worker.playoutRandom, worker.placements, cutoff, worker.cutoffMasks);
+            if (winner != PentagoPlayout.CUT_OFF)
+                return winner == this.player ? 1 : 0;
+
+            long mine = worker.cutoffMasks[this.player];
+            long opponent = worker.cutoffMasks[1 - this.player];
+            double eval = Evaluation.eval(opponent, mine) - Evaluation.eval(mine, opponent);
+            double winProbability = MonteCarloDecisionMaker.this.evalToWinProbability.applyAsDouble(eval);
+            return worker.playoutRandom.nextDouble() < winProbability ? 1 : 0;
         }
 
         /**
-         * Update the tree from a specified location.
+         * Update the all-moves-as-first counts of the nodes from this leaf up to the root: a node's
+         * player placed on the cells of its moves on the path below it in every playout, and on the
+         * cells counted in the worker's buffers in some of them.
          *
          * @param dTimeVisited  New time visited.
          * @param dWinFrequency New win frequency.
-         * @param node          Node of interest.
+         * @param worker        The simulating thread's buffers.
+         * @param rollouts      If the buffers hold the counts of this leaf's playouts.
          */
-        private void updateTree(int dTimeVisited, int dWinFrequency, Node node) {
-            Node parent = node.parent, child = node;
-            while (parent != null) {
-                child.timeVisited += dTimeVisited;
-                child.winFrequency += dWinFrequency;
-                child = parent;
-                parent = parent.parent;
+        private void updateAmaf(int dTimeVisited, int dWinFrequency, Worker worker, boolean rollouts) {
+            Node root = MonteCarloDecisionMaker.this.root;
+            long[] pathCells = worker.placements;
+            pathCells[0] = pathCells[1] = 0;
+            for (Node child = this; child != root; child = child.parent) {
+                Node parent = child.parent;
+                int colour = parent.state.getTurnPlayer();
+                pathCells[colour] |= 1L << PentagoMove.packedCell(child.move);
+                for (int cell = 0; cell < CELLS; cell++) {
+                    if ((pathCells[colour] & 1L << cell) != 0) {
+                        parent.amaf.addAndGet(cell, dTimeVisited);
+                        parent.amaf.addAndGet(CELLS + cell, dWinFrequency);
+                    } else if (rollouts && worker.amafVisits[colour * CELLS + cell] != 0) {
+                        parent.amaf.addAndGet(cell, worker.amafVisits[colour * CELLS + cell]);
+                        parent.amaf.addAndGet(CELLS + cell, worker.amafWins[colour * CELLS + cell]);
+                    }
+                }
             }
-            child.timeVisited += dTimeVisited;
-            child.winFrequency += dWinFrequency;
         }
 
         /**
-         * Get a pseudo-random move.
+         * Update the tree from a specified location up to the root, atomically, and take
+         * back the virtual losses that selection put on the way down.
          *
-         * @param state A state.
-         * @return A random move.
+         * @param dTimeVisited  New time visited.
+         * @param dWinFrequency New win frequency.
+         * @param node          Node of interest.
          */
-        PentagoMove getRandomMove(PentagoBoardState state) {
-            ArrayList<int[]> emptySlots = new ArrayList<>();
-            Piece[][] board = state.getBoard();
-            for (int i = 0; i < board.length; i++)
-                for (int j = 0; j < board[i].length; j++)
-                    if (board[i][j] == Piece.EMPTY)
-                        emptySlots.add(new int[]{i, j});
-
-            int[] randomCoordinate = emptySlots.get(rand.nextInt(emptySlots.size()));
-            return new PentagoMove(
-                    randomCoordinate[0],
-                    randomCoordinate[1],
-                    rand.nextInt(4),
-                    rand.nextInt(2),
-                    state.getTurnPlayer()
-            );
+        private void updateTree(int dTimeVisited, int dWinFrequency, Node node) {
+            Node root = MonteCarloDecisionMaker.this.root, child = node;
+            while (child != root) {
+                TIME_VISITED.addAndGet(child, dTimeVisited);
+                WIN_FREQUENCY.addAndGet(child, dWinFrequency);
+                VIRTUAL_VISITS.addAndGet(child, -MonteCarloDecisionMaker.VIRTUAL_LOSS);
+                child = child.parent;
+            }
+            TIME_VISITED.addAndGet(child, dTimeVisited);
+            WIN_FREQUENCY.addAndGet(child, dWinFrequency);
         }
 
         /**
-         * Find the best move according to win ratio.
+         * Find the best move of the root player according to win ratio, taking a proven win
+         * if there is one and a proven loss only if every move is one.
          *
-         * @return A move.
+         * @return A packed move.
          */
-        PentagoMove getMoveWithHighestWinRate() {
+        int getMoveWithHighestWinRate() {
+            for (Node child : getChildren())
+                if (child.proven == PROVEN_WIN)
+                    return child.move;
+
+            int bestMove = getMoveWithHighestWinRate(true);
+            return bestMove != NO_MOVE ? bestMove : getMoveWithHighestWinRate(false);
+        }
+
+        private int getMoveWithHighestWinRate(boolean skipProvenLosses) {
             double highestWinRate = Double.NEGATIVE_INFINITY;
-            PentagoMove bestMove = null;
+            int bestMove = NO_MOVE;
 
-            for (Node child : this.children)
-                if (child.timeVisited != 0 && (double) child.winFrequency / child.timeVisited > highestWinRate) {
+            for (Node child : getChildren())
+                if (!(skipProvenLosses && child.proven == PROVEN_LOSS)
+                        && child.timeVisited != 0 && (double) child.winFrequency / child.timeVisited > highestWinRate) {
                     bestMove = child.move;
                     highestWinRate = (double) child.winFrequency / child.timeVisited;
                 }
@@ -301,10 +1219,107 @@ public class MonteCarloDecisionMaker implements DecisionMaker {
             return bestMove;
         }
 
-        double UCT(Node children, Integer parentTimeVisited) {
-            double Q_sa = children.timeVisited == 0 ? 0.0 : ((double) children.winFrequency) / children.timeVisited;
-            double N_sa = children.timeVisited == 0 ? 0.000001 : children.timeVisited;
+        double UCT(Node children, int parentTimeVisited) {
+            // Searches in flight count as lost visits.
+            int visits = children.timeVisited + children.virtualVisits;
+            double Q_sa = visits == 0 ? 0.0 : ((double) children.winFrequency) / visits;
+            if (MonteCarloDecisionMaker.RAVE) {
+                double beta = Math.sqrt((double) MonteCarloDecisionMaker.RAVE_EQUIVALENCE
+                        / (3.0 * children.timeVisited + MonteCarloDecisionMaker.RAVE_EQUIVALENCE));
+                Q_sa = (1 - beta) * Q_sa + beta * amafRate(PentagoMove.packedCell(children.move));
+            }
+            double N_sa = visits == 0 ? 0.000001 : visits;
             return Q_sa + MonteCarloDecisionMaker.UCT_CONST * Math.sqrt((Math.log1p(parentTimeVisited) / N_sa));
         }
     }
+
+    /**
+     * Visit and win counts of the root children of one or more trees of the same position, from
+     * which the move to play is chosen as Node.getMoveWithHighestWinRate() does.
+     */
+    static class RootStatistics {
+        private final int moveCount;
+        private final Map<Integer, long[]> counts = new LinkedHashMap<>();
+        private final Map<Integer, Byte> proven = new HashMap<>();
+
+        /**
+         * @param moveCount Number of root moves, with or without a child.
+         */
+        RootStatistics(int moveCount) {
+            this.moveCount = moveCount;
+        }
+
+        /**
+         * Count a root child, adding to the counts of the same move.
+         */
+        void add(int move, long visits, long wins, byte proven) {
+            long[] counts = this.counts.computeIfAbsent(move, m -> new long[2]);
+            counts[0] += visits;
+            counts[1] += wins;
+            if (proven != UNPROVEN)
+                this.proven.put(move, proven);
+        }
+
+        /**
+         * Add the counts of another tree of the same position.
+         */
+        void addAll(RootStatistics other) {
+            for (Map.Entry<Integer, long[]> entry : other.counts.entrySet())
+                add(entry.getKey(), entry.getValue()[0], entry.getValue()[1], other.getProven(entry.getKey()));
+        }
+
+        private byte getProven(int move) {
+            return this.proven.getOrDefault(move, UNPROVEN);
+        }
+
+        /**
+         * @return A proven win if any, else the best win rate, a proven loss only if every move is one.
+         */
+        int getBestMove() {
+            for (int move : this.counts.keySet())
+                if (getProven(move) == PROVEN_WIN)
+                    return move;
+            int bestMove = getBestMove(true);
+            return bestMove != NO_MOVE ? bestMove : getBestMove(false);
+        }
+
+        private int getBestMove(boolean skipProvenLosses) {
+            double highestWinRate = Double.NEGATIVE_INFINITY;
+            int bestMove = NO_MOVE;
+            for (Map.Entry<Integer, long[]> entry : this.counts.entrySet()) {
+                long[] counts = entry.getValue();
+                if (!(skipProvenLosses && getProven(entry.getKey()) == PROVEN_LOSS)
+                        && counts[0] != 0 && (double) counts[1] / counts[0] > highestWinRate) {
+                    bestMove = entry.getKey();
+                    highestWinRate = (double) counts[1] / counts[0];
+                }
+            }
+            return bestMove;
+        }
+
+        /**
+         * The move is picked by win rate, so it is settled once, even if every visit left went to
+         * it and lost, its rate would stay above that of any other move that won every visit left,
+         * at WIN_LEVER per visit. A proven win is settled, and no move is while some have no child.
+         *
+         * @param visitsLeft Visits the search can still add.
+         * @return True if no other move can overtake the best one.
+         */
+        boolean isSettled(long visitsLeft) {
+            int bestMove = getBestMove();
+            if (bestMove == NO_MOVE || this.counts.size() < this.moveCount)
+                return false;
+            if (getProven(bestMove) == PROVEN_WIN)
+                return true;
+            long[] best = this.counts.get(bestMove);
+            double lowest = (double) best[1] / (best[0] + visitsLeft);
+            for (Map.Entry<Integer, long[]> entry : this.counts.entrySet()) {
+                long[] counts = entry.getValue();
+                if (entry.getKey() != bestMove && getProven(entry.getKey()) != PROVEN_LOSS
+                        && (counts[1] + (double) MonteCarloDecisionMaker.WIN_LEVER * visitsLeft) / (counts[0] + visitsLeft) >= lowest)
+                    return false;
+            }
+            return true;
+        }
+    }
 }
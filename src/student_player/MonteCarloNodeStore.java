@@ -0,0 +1,157 @@
+package student_player;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays storage for Monte Carlo search trees.
+ *
+ * A node is an int id indexing parallel primitive arrays, and the children of a node occupy a
+ * contiguous id range, so selection scans adjacent array slots and updates never allocate.
+ * Board states are not stored: the searcher replays the packed moves from the root.
+ * The arrays grow by doubling when full, up to a maximum capacity, and are kept by clear(), which
+ * makes the store reusable for the next decision.
+ */
+public class MonteCarloNodeStore {
+
+    public static final int NONE = -1;
+    public static final int ROOT = 0;
+
+    // Bytes of array storage per node: move, parent, visits, wins and first child, child count, outcome.
+    public static final int BYTES_PER_NODE = 5 * Integer.BYTES + Short.BYTES + Byte.BYTES;
+
+    // Outcome flags: a terminal node's result is known, WON when the searching player won it.
+    static final byte ONGOING = 0;
+    static final byte TERMINAL = 1;
+    static final byte WON = 2;
+
+    // Largest array the JVM reliably allocates.
+    private static final int MAX_ARRAY_CAPACITY = Integer.MAX_VALUE - 8;
+
+    int[] move;
+    int[] parent;
+    int[] visits;
+    int[] wins;
+    int[] firstChild;
+    short[] childCount;
+    byte[] outcome;
+
+    private final int maxCapacity;
+    private int size;
+
+    /**
+     * A store of a fixed capacity, all allocated at once.
+     *
+     * @param capacity Maximum number of nodes; about BYTES_PER_NODE bytes each.
+     */
+    public MonteCarloNodeStore(int capacity) {
+        this(capacity, capacity);
+    }
+
+    /**
+     * @param initialCapacity Number of nodes allocated at once.
+     * @param maxCapacity     Maximum number of nodes, allocated as needed; about BYTES_PER_NODE bytes each.
+     */
+    public MonteCarloNodeStore(int initialCapacity, int maxCapacity) {
+        if (initialCapacity < 1 || maxCapacity < initialCapacity)
+            throw new IllegalArgumentException("Capacities must be positive and ordered: " + initialCapacity + ", " + maxCapacity);
+        this.maxCapacity = maxCapacity;
+        this.move = new int[initialCapacity];
+        this.parent = new int[initialCapacity];
+        this.visits = new int[initialCapacity];
+        this.wins = new int[initialCapacity];
+        this.firstChild = new int[initialCapacity];
+        this.childCount = new short[initialCapacity];
+        this.outcome = new byte[initialCapacity];
+    }
+
+    /**
+     * Size a store by a share of the heap.
+     *
+     * @param heapShare Share of Runtime.maxMemory() the nodes may take, in (0, 1].
+     * @return The number of nodes that fit in it.
+     */
+    public static int capacityFor(double heapShare) {
+        if (!(heapShare > 0 && heapShare <= 1))
+            throw new IllegalArgumentException("Heap share must be in (0, 1]: " + heapShare);
+        long nodes = (long) (heapShare * Runtime.getRuntime().maxMemory()) / BYTES_PER_NODE;
+        return (int) Math.max(1, Math.min(MAX_ARRAY_CAPACITY, nodes));
+    }
+
+    /**
+     * Drop every node and add an unexpanded root.
+     *
+     * @param rootMove The move that led to the root, e.g. a packed move or -1.
+     */
+    public void clear(int rootMove) {
+        this.size = 0;
+        allocate(rootMove, NONE);
+    }
+
+    /**
+     * Reserve a contiguous range of children, unexpanded and unvisited.
+     *
+     * @param node  The parent id.
+     * @param count Number of children.
+     * @return The first child id, or NONE if the store is full.
+     */
+    public int addChildren(int node, int count) {
+        if (!reserve(count))
+            return NONE;
+        int first = this.size;
+        for (int i = 0; i < count; i++)
+            allocate(0, node);
+        this.firstChild[node] = first;
+        this.childCount[node] = (short) count;
+        return first;
+    }
+
+    /**
+     * Make room for more nodes, doubling the arrays if they are full.
+     *
+     * @param count Number of nodes to add.
+     * @return False if they would pass the maximum capacity.
+     */
+    private boolean reserve(int count) {
+        long needed = (long) this.size + count;
+        if (needed <= this.move.length)
+            return true;
+        if (needed > this.maxCapacity)
+            return false;
+
+        int capacity = (int) Math.min(this.maxCapacity, Math.max(needed, 2L * this.move.length));
+        this.move = Arrays.copyOf(this.move, capacity);
+        this.parent = Arrays.copyOf(this.parent, capacity);
+        this.visits = Arrays.copyOf(this.visits, capacity);
+        this.wins = Arrays.copyOf(this.wins, capacity);
+        this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+        this.childCount = Arrays.copyOf(this.childCount, capacity);
+        this.outcome = Arrays.copyOf(this.outcome, capacity);
+        return true;
+    }
+
+    private void allocate(int move, int parent) {
+        int id = this.size++;
+        this.move[id] = move;
+        this.parent[id] = parent;
+        this.visits[id] = 0;
+        this.wins[id] = 0;
+        this.firstChild[id] = NONE;
+        this.childCount[id] = 0;
+        this.outcome[id] = ONGOING;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return Number of nodes the arrays hold now, not the maximum they may grow to.
+     */
+    public int capacity() {
+        return this.move.length;
+    }
+
+    public boolean isLeaf(int node) {
+        return this.childCount[node] == 0;
+    }
+}
@@ -0,0 +1,121 @@
+package student_player;
+
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
+
+/**
+ * Root-parallel Monte Carlo Tree Search: independent single-threaded trees with different seeds,
+ * one per thread, sharing nothing while they search. They all search to one deadline, and the
+ * calling thread decides for all of them whether to stop early, from the root children counts
+ * summed over the trees. Then the counts are summed into the first tree, which picks its move
+ * as usual.
+ */
+public class RootParallelMonteCarloDecisionMaker implements DecisionMaker {
+
+    private static final int DEFAULT_TREES = 4;
+    private static final long SEED = 2019;
+    private static final Long MOVE_TIMEOUT = 2000L;
+    // How often the calling thread looks at the summed counts, in ms.
+    private static final long STOP_CHECK_INTERVAL = 10L;
+
+    private final PentagoBoardState state;
+    private final MonteCarloDecisionMaker[] trees;
+    private TimeManager timeManager = new TimeManager(MOVE_TIMEOUT, MOVE_TIMEOUT);
+
+    public RootParallelMonteCarloDecisionMaker(PentagoBoardState state) {
+        this(state, DEFAULT_TREES);
+    }
+
+    /**
+     * @param state The position to move in.
+     * @param trees Number of independent trees, each searched by its own thread.
+     */
+    public RootParallelMonteCarloDecisionMaker(PentagoBoardState state, int trees) {
+        if (trees < 1)
+            throw new IllegalArgumentException("At least one tree is needed: " + trees);
+        this.state = (PentagoBoardState) state.clone();
+        this.trees = new MonteCarloDecisionMaker[trees];
+        for (int i = 0; i < trees; i++)
+            this.trees[i] = new MonteCarloDecisionMaker(state, 1, SEED + 7919L * i);
+    }
+
+    /**
+     * Budget each decision with a time manager instead of a fixed MOVE_TIMEOUT per move. It
+     * decides for every tree.
+     *
+     * @param timeManager A time manager, only used by this engine.
+     */
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    @Override
+    public PentagoMove makeDecision() {
+
+        // If we can win in one round, return.
+        int[] winningMoves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        if (this.state.getWinningMoves(winningMoves) > 0)
+            return PentagoMove.unpack(winningMoves[0]);
+
+        // Search every tree on its own thread to the same deadline, while the calling thread
+        // watches the summed counts and stops them all once the move is settled.
+        this.timeManager.startTurn(this.state.getTurnNumber());
+        long deadline = this.timeManager.getDeadline();
+        Thread[] threads = new Thread[this.trees.length];
+        for (int i = 0; i < threads.length; i++) {
+            MonteCarloDecisionMaker tree = this.trees[i];
+            threads[i] = new Thread(() -> tree.searchUntil(deadline), "mcts-tree-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        try {
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    thread.join(STOP_CHECK_INTERVAL);
+                    if (thread.isAlive() && shouldStopEarly()) {
+                        for (MonteCarloDecisionMaker tree : this.trees)
+                            tree.requestStop();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (MonteCarloDecisionMaker tree : this.trees)
+                tree.requestStop();
+            Thread.currentThread().interrupt();
+        }
+
+        // Merge the root statistics and choose.
+        for (int i = 1; i < this.trees.length; i++)
+            this.trees[0].mergeRootStatistics(this.trees[i]);
+        int move = this.trees[0].getRoot().getMoveWithHighestWinRate();
+        return move == MonteCarloDecisionMaker.NO_MOVE ? null : PentagoMove.unpack(move);
+    }
+
+    /**
+     * Ask the time manager whether to stop, with the root children counts summed over the trees
+     * and the visits they all added.
+     *
+     * @return True if every tree can stop.
+     */
+    private boolean shouldStopEarly() {
+        MonteCarloDecisionMaker.RootStatistics statistics = this.trees[0].getRootStatistics();
+        long newVisits = this.trees[0].getNewRootVisits();
+        for (int i = 1; i < this.trees.length; i++) {
+            statistics.addAll(this.trees[i].getRootStatistics());
+            newVisits += this.trees[i].getNewRootVisits();
+        }
+        return this.timeManager.shouldStop(statistics.getBestMove(), statistics.isSettled(this.timeManager.visitsLeft(newVisits)));
+    }
+
+    /**
+     * Number of simulations run by the last search, over all trees.
+     *
+     * @return Simulation count.
+     */
+    public int getSimulationCount() {
+        int total = 0;
+        for (MonteCarloDecisionMaker tree : this.trees)
+            total += tree.getSimulationCount();
+        return total;
+    }
+}
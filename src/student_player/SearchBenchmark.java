@@ -0,0 +1,92 @@
+package student_player;
+
+import pentago_twist.PentagoBoard;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoMove;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * Runs the search engines on the same sample positions with their usual time budget and reports
+ * simulations per second, so parallel designs can be compared on the same hardware. Some engines
+ * stop a decision early once their move is settled, so simulations per decision would not compare
+ * equal budgets.
+ *
+ * Usage: java -cp bin student_player.SearchBenchmark [threads] [positions]
+ */
+public class SearchBenchmark {
+
+    public static void main(String[] args) {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int positions = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.println("Threads: " + threads + ", cores: " + Runtime.getRuntime().availableProcessors());
+
+        LeafParallelRollouts leafRollouts = new LeafParallelRollouts(Math.max(threads - 1, 1));
+        MonteCarloNodeStore nodes = new MonteCarloNodeStore(1 << 16, 1 << 22);
+        double[] totals = new double[6];
+        for (PentagoBoardState state : samplePositions(positions, new Random(2019))) {
+            System.out.println("Turn " + state.getTurnNumber() + ", player " + state.getTurnPlayer());
+
+            MonteCarloDecisionMaker single = new MonteCarloDecisionMaker(state);
+            totals[0] += run("single tree", single, single::getSimulationCount);
+
+            MonteCarloDecisionMaker shared = new MonteCarloDecisionMaker(state, threads);
+            totals[1] += run("tree-parallel", shared, shared::getSimulationCount);
+
+            RootParallelMonteCarloDecisionMaker ensemble = new RootParallelMonteCarloDecisionMaker(state, threads);
+            totals[2] += run("root-parallel", ensemble, ensemble::getSimulationCount);
+
+            MonteCarloDecisionMaker leaves = new MonteCarloDecisionMaker(state);
+            leaves.setLeafParallelRollouts(leafRollouts);
+            totals[3] += run("leaf-parallel", leaves, leaves::getSimulationCount);
+
+            ArrayMonteCarloDecisionMaker arrays = new ArrayMonteCarloDecisionMaker(state, nodes);
+            totals[4] += run("array tree", arrays, arrays::getSimulationCount);
+            System.out.println(String.format("  %-14s %8d nodes, %d MB of %d MB reserved", "",
+                    arrays.getTreeSize(), (long) arrays.getTreeSize() * MonteCarloNodeStore.BYTES_PER_NODE >> 20,
+                    (long) nodes.capacity() * MonteCarloNodeStore.BYTES_PER_NODE >> 20));
+
+            GraphMonteCarloDecisionMaker graph = new GraphMonteCarloDecisionMaker(state);
+            totals[5] += run("graph", graph, graph::getSimulationCount);
+            System.out.println(String.format("  %-14s %8d positions, %d transpositions, %d edges", "",
+                    graph.getGraphSize(), graph.getTranspositionCount(), graph.getEdgeCount()));
+        }
+        leafRollouts.shutdown();
+
+        System.out.println(String.format("Average simulations per second: single tree %.0f, tree-parallel %.0f, root-parallel %.0f, leaf-parallel %.0f, array tree %.0f, graph %.0f",
+                totals[0] / positions, totals[1] / positions, totals[2] / positions, totals[3] / positions, totals[4] / positions, totals[5] / positions));
+    }
+
+    /**
+     * @return Simulations per second of the decision.
+     */
+    private static double run(String name, DecisionMaker maker, IntSupplier simulations) {
+        long start = System.nanoTime();
+        PentagoMove move = maker.makeDecision();
+        long time = Math.max(1, System.nanoTime() - start);
+        double rate = simulations.getAsInt() * 1e9 / time;
+        System.out.println(String.format("  %-14s %8d simulations in %4d ms, %8.0f/s, move %s",
+                name, simulations.getAsInt(), time / 1000000, rate, move == null ? "none" : move.toTransportable()));
+        return rate;
+    }
+
+    /**
+     * Random positions from the opening to the middle game, none of them with a win in one.
+     */
+    static List<PentagoBoardState> samplePositions(int count, Random rand) {
+        List<PentagoBoardState> positions = new ArrayList<>();
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        while (positions.size() < count) {
+            PentagoBoardState state = (PentagoBoardState) new PentagoBoard().getBoardState();
+            int plies = 4 + rand.nextInt(16);
+            for (int i = 0; i < plies && !state.gameOver(); i++)
+                state.applyMove(moves[rand.nextInt(state.getAllLegalMoves(moves))]);
+            if (!state.gameOver() && !state.hasWinningMove())
+                positions.add(state);
+        }
+        return positions;
+    }
+}
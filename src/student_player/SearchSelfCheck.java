@@ -0,0 +1,395 @@
+package student_player;
+
+import boardgame.Move;
+import pentago_twist.PentagoBoard;
+import pentago_twist.PentagoBoardState;
+import pentago_twist.PentagoBoardState.Piece;
+import pentago_twist.PentagoMove;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Consistency checks for the search engines, against brute force on small positions.
+ * Run with: java -cp bin student_player.SearchSelfCheck
+ */
+public class SearchSelfCheck {
+
+    // Searches of up to SEARCH_ROUNDS decisions of SEARCH_TIME ms each, stopping once the root is proven.
+    private static final long SEARCH_TIME = 1000L;
+    private static final int SEARCH_ROUNDS = 30;
+    // Positions of each kind the solver is checked on.
+    private static final int SOLVER_POSITIONS = 10;
+    // Node budget small enough for a search of BUDGET_TIME ms to pass it, over BUDGET_TURNS decisions.
+    private static final int NODE_BUDGET = 1000;
+    private static final long BUDGET_TIME = 300L;
+    private static final int BUDGET_TURNS = 8;
+    // Random colourings, of every density, on which the two evaluations are compared.
+    private static final int EVAL_BOARDS = 500000;
+    // Games StudentPlayer plays on one live board, for up to LIVE_TURNS turns, against random moves
+    // that take OPPONENT_TIME ms so that it ponders.
+    private static final int LIVE_GAMES = 2;
+    private static final int LIVE_TURNS = 7;
+    private static final long OPPONENT_TIME = 200L;
+    // Alpha-beta decisions under timeouts from one that leaves no time at all to one that lets it finish.
+    private static final long[] ALPHA_BETA_TIMEOUTS = {1L, 60L, 150L, 400L};
+    private static final int ALPHA_BETA_POSITIONS = 4;
+
+    public static void main(String[] args) {
+        checkEvaluation();
+        checkSolver();
+        checkNodeBudget();
+        checkLiveBoard();
+        checkAlphaBetaDeadline();
+        System.out.println("All checks passed.");
+    }
+
+    /**
+     * Compares Evaluation.eval on colour masks with the original Piece[][] version, for both
+     * colours, on random colourings of every density: the bits of each colour are random with
+     * probability 1/2, 1/4 or 1/8, so that sparse boards and nearly full ones are both covered.
+     */
+    static void checkEvaluation() {
+        Random rand = new Random(2019);
+        Piece[][] board = new Piece[PentagoBoardState.BOARD_SIZE][PentagoBoardState.BOARD_SIZE];
+        long cells = (1L << PentagoBoardState.BOARD_SIZE * PentagoBoardState.BOARD_SIZE) - 1;
+        for (int i = 0; i < EVAL_BOARDS; i++) {
+            long white = randomBits(rand, i % 3) & cells;
+            long black = randomBits(rand, i / 3 % 3) & cells & ~white;
+            for (int x = 0; x < PentagoBoardState.BOARD_SIZE; x++)
+                for (int y = 0; y < PentagoBoardState.BOARD_SIZE; y++) {
+                    long bit = 1L << (x * PentagoBoardState.BOARD_SIZE + y);
+                    board[x][y] = (white & bit) != 0 ? Piece.WHITE : (black & bit) != 0 ? Piece.BLACK : Piece.EMPTY;
+                }
+            if (Evaluation.eval(board, Piece.BLACK, Piece.WHITE) != Evaluation.eval(black, white)
+                    || Evaluation.eval(board, Piece.WHITE, Piece.BLACK) != Evaluation.eval(white, black)) {
+                throw new IllegalStateException("Evaluations differ on white " + Long.toHexString(white)
+                        + ", black " + Long.toHexString(black));
+            }
+        }
+        System.out.println("Evaluation: masks and boards agree on " + EVAL_BOARDS + " random boards.");
+    }
+
+    /**
+     * @return A random long whose bits are set with probability 1 / 2^(sparseness + 1).
+     */
+    private static long randomBits(Random rand, int sparseness) {
+        long bits = rand.nextLong();
+        for (int i = 0; i < sparseness; i++)
+            bits &= rand.nextLong();
+        return bits;
+    }
+
+    /**
+     * Finds positions whose player to move wins by force within their next move (but not with the
+     * move itself), and positions where every move loses at once or to an immediate reply. The
+     * solver must prove the first PROVEN_WIN, with a proven child as its decision, and the second
+     * PROVEN_LOSS, with eager, lazy and progressively widened expansion. Each proof is then
+     * followed down to the finished games it rests on, which also checks the longer wins the
+     * solver may have found instead.
+     */
+    static void checkSolver() {
+        Random rand = new Random(2019);
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int wins = 0, losses = 0, proofNodes = 0;
+        while (wins < SOLVER_POSITIONS || losses < SOLVER_POSITIONS) {
+            PentagoBoardState state = randomPosition(rand, moves);
+            if (state == null || state.hasWinningMove())
+                continue;
+            boolean forcedWin = wins < SOLVER_POSITIONS && forcedWinningMove(state) != MonteCarloDecisionMaker.NO_MOVE;
+            boolean forcedLoss = !forcedWin && losses < SOLVER_POSITIONS && everyMoveLoses(state);
+            if (!forcedWin && !forcedLoss)
+                continue;
+
+            byte expected = forcedWin ? MonteCarloDecisionMaker.PROVEN_WIN : MonteCarloDecisionMaker.PROVEN_LOSS;
+            for (int scheme = 0; scheme < 3; scheme++) {
+                MonteCarloDecisionMaker maker = new MonteCarloDecisionMaker(state);
+                maker.setExpansion(scheme > 0, scheme > 1);
+                maker.setTimeManager(searchToDeadline(SEARCH_TIME));
+                for (int round = 0; round < SEARCH_ROUNDS && maker.getRoot().proven != expected; round++)
+                    maker.search();
+                if (maker.getRoot().proven != expected) {
+                    throw new IllegalStateException("Solver leaves " + maker.getRoot().proven + " instead of "
+                            + expected + " with expansion scheme " + scheme + " in\n" + state);
+                }
+                if (forcedWin) {
+                    int move = maker.getRoot().getMoveWithHighestWinRate();
+                    boolean proven = false;
+                    for (MonteCarloDecisionMaker.Node child : maker.getRoot().getChildren())
+                        proven |= child.move == move && child.proven == MonteCarloDecisionMaker.PROVEN_WIN;
+                    if (!proven) {
+                        throw new IllegalStateException("Solver picks " + PentagoMove.unpack(move).toPrettyString()
+                                + ", which is not proven, in\n" + state);
+                    }
+                }
+                proofNodes += checkProof(maker.getRoot(), expected);
+            }
+            if (forcedWin)
+                wins++;
+            else
+                losses++;
+        }
+        System.out.println("Solver: " + wins + " forced wins and " + losses + " forced losses proven with every expansion scheme, "
+                + proofNodes + " proof nodes followed.");
+    }
+
+    /**
+     * Plays a game with a node budget the searches pass, pruning during the searches and once
+     * more after each, and moving the root with reuseSubtree. After each step the tree must hold
+     * nodeCount nodes, each once and linked to its parent, the free list none of them, and after
+     * the extra pruning no more nodes than the budget.
+     */
+    static void checkNodeBudget() {
+        Random rand = new Random(424);
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        PentagoBoardState state = (PentagoBoardState) new PentagoBoard().getBoardState();
+        MonteCarloDecisionMaker maker = new MonteCarloDecisionMaker(state);
+        maker.setNodeBudget(NODE_BUDGET);
+        maker.setTimeManager(searchToDeadline(BUDGET_TIME));
+        int mostFree = 0;
+        for (int turn = 0; turn < BUDGET_TURNS && !state.gameOver(); turn++) {
+            maker.search();
+            checkTree(maker, "a search");
+            maker.prune();
+            checkTree(maker, "pruning");
+            if (maker.getNodeCount() > NODE_BUDGET)
+                throw new IllegalStateException("Pruning leaves " + maker.getNodeCount() + " nodes for a budget of " + NODE_BUDGET);
+            mostFree = Math.max(mostFree, maker.getFreeNodes().size());
+
+            state.applyMove(maker.getRoot().getMoveWithHighestWinRate());
+            if (!state.gameOver())
+                state.applyMove(moves[rand.nextInt(state.getAllLegalMoves(moves))]);
+            if (!state.gameOver()) {
+                maker.reuseSubtree(state);
+                checkTree(maker, "moving the root");
+            }
+        }
+        if (mostFree == 0)
+            throw new IllegalStateException("The searches never pass the node budget of " + NODE_BUDGET);
+        System.out.println("Node budget: tree and free list consistent over " + BUDGET_TURNS + " decisions, up to "
+                + mostFree + " free nodes.");
+    }
+
+    /**
+     * Checks that the tree holds nodeCount nodes, each once and linked to its parent, and that
+     * freed nodes are cleared and none of them.
+     */
+    private static void checkTree(MonteCarloDecisionMaker maker, String after) {
+        Set<MonteCarloDecisionMaker.Node> tree = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<MonteCarloDecisionMaker.Node> stack = new ArrayList<>();
+        if (maker.getRoot().parent != null)
+            throw new IllegalStateException("The root has a parent after " + after);
+        stack.add(maker.getRoot());
+        while (!stack.isEmpty()) {
+            MonteCarloDecisionMaker.Node node = stack.remove(stack.size() - 1);
+            if (!tree.add(node))
+                throw new IllegalStateException("A node is in the tree twice after " + after);
+            for (MonteCarloDecisionMaker.Node child : node.getChildren()) {
+                if (child.parent != node)
+                    throw new IllegalStateException("A child is not linked to its parent after " + after);
+                stack.add(child);
+            }
+        }
+        if (tree.size() != maker.getNodeCount())
+            throw new IllegalStateException("The tree has " + tree.size() + " nodes but counts " + maker.getNodeCount()
+                    + " after " + after);
+
+        Set<MonteCarloDecisionMaker.Node> free = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MonteCarloDecisionMaker.Node node : maker.getFreeNodes()) {
+            if (tree.contains(node))
+                throw new IllegalStateException("A free node is still in the tree after " + after);
+            if (!free.add(node))
+                throw new IllegalStateException("A node is free twice after " + after);
+            if (node.parent != null || !node.getChildren().isEmpty())
+                throw new IllegalStateException("A free node keeps its links after " + after);
+        }
+    }
+
+    /**
+     * Drives StudentPlayer the way Client does, with the one board state that every move changes
+     * in place: chooseMove on it, then after each move, ours echoed back as well, board.move and
+     * movePlayed on it. The opponent's moves come while StudentPlayer ponders, so the board changes
+     * under the background search. Every move chosen must be legal, which fails if a search tree
+     * keeps the live state instead of a copy of it.
+     */
+    static void checkLiveBoard() {
+        Random rand = new Random(2019);
+        int decisions = 0;
+        for (int game = 0; game < LIVE_GAMES; game++) {
+            PentagoBoard board = new PentagoBoard();
+            PentagoBoardState live = (PentagoBoardState) board.getBoardState();
+            StudentPlayer player = new StudentPlayer();
+            player.setColor(game % 2);
+            while (!live.gameOver() && live.getTurnNumber() < LIVE_TURNS) {
+                Move move;
+                if (live.getTurnPlayer() == player.getColor()) {
+                    move = player.chooseMove(live);
+                    if (!(move instanceof PentagoMove) || !live.isLegal((PentagoMove) move))
+                        throw new IllegalStateException("StudentPlayer plays " + (move == null ? "no move" : move.toPrettyString()) + " on turn " + live.getTurnNumber()
+                                + " in\n" + live);
+                    decisions++;
+                } else {
+                    try {
+                        Thread.sleep(OPPONENT_TIME);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+                    move = PentagoMove.unpack(moves[rand.nextInt(live.getAllLegalMoves(moves))]);
+                }
+                board.move(move);
+                player.movePlayed(live, move);
+            }
+            player.gameOver("", live);
+        }
+        System.out.println("Live board: " + decisions + " legal decisions over " + LIVE_GAMES + " games.");
+    }
+
+    /**
+     * Cuts alpha-beta searches short at various deadlines: each must still return a legal move,
+     * from the depths it finished rather than the child it was searching when time ran out.
+     */
+    static void checkAlphaBetaDeadline() {
+        Random rand = new Random(2019);
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int decisions = 0;
+        while (decisions < ALPHA_BETA_POSITIONS * ALPHA_BETA_TIMEOUTS.length) {
+            PentagoBoardState state = randomPosition(rand, moves);
+            if (state == null)
+                continue;
+            for (long timeout : ALPHA_BETA_TIMEOUTS) {
+                AlphaBetaSearchDecisionMaker maker = new AlphaBetaSearchDecisionMaker(state);
+                maker.setTimeManager(new TimeManager(timeout, timeout));
+                PentagoMove move = maker.makeDecision();
+                if (move == null || !state.isLegal(move))
+                    throw new IllegalStateException("Alpha-beta with " + timeout + " ms plays "
+                            + (move == null ? "no move" : move.toPrettyString()) + " in\n" + state);
+                decisions++;
+            }
+        }
+        System.out.println("Alpha-beta: " + decisions + " legal decisions under deadlines.");
+    }
+
+    /**
+     * A time manager for rounds of a fixed time, which only the deadline or a proof ends.
+     */
+    private static TimeManager searchToDeadline(long time) {
+        return new TimeManager(time, time) {
+            @Override
+            public boolean shouldStop(int bestMove, boolean settled) {
+                return outOfTime();
+            }
+        };
+    }
+
+    /**
+     * Follows a proof down the tree: a finished game must have the proven outcome, the side the
+     * proof favours must have a child with the same proof, and the other side must have a child
+     * with the same proof for every distinct successor position.
+     *
+     * @return Number of nodes followed.
+     */
+    private static int checkProof(MonteCarloDecisionMaker.Node node, byte proven) {
+        if (node.proven != proven)
+            throw new IllegalStateException("Proof " + proven + " rests on a node proven " + node.proven + ":\n" + node.state);
+        int winner = proven == MonteCarloDecisionMaker.PROVEN_WIN ? node.player : 1 - node.player;
+        if (node.isOver()) {
+            if (node.state.getWinner() != winner)
+                throw new IllegalStateException("Proof " + proven + " ends in a game won by " + node.state.getWinner());
+            return 1;
+        }
+
+        if (node.state.getTurnPlayer() == winner) {
+            for (MonteCarloDecisionMaker.Node child : node.getChildren())
+                if (child.proven == proven)
+                    return 1 + checkProof(child, proven);
+            throw new IllegalStateException("Proof " + proven + " has no proven move in\n" + node.state);
+        }
+
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int count = node.state.getDistinctSuccessors(moves);
+        java.util.Set<PentagoBoardState> successors = new java.util.HashSet<>();
+        for (int i = 0; i < count; i++) {
+            PentagoBoardState next = (PentagoBoardState) node.state.clone();
+            next.applyMove(moves[i]);
+            successors.add(next);
+        }
+        int nodes = 1;
+        for (MonteCarloDecisionMaker.Node child : node.getChildren()) {
+            successors.remove(child.state);
+            nodes += checkProof(child, proven);
+        }
+        if (!successors.isEmpty())
+            throw new IllegalStateException("Proof " + proven + " misses " + successors.size() + " replies in\n" + node.state);
+        return nodes;
+    }
+
+    /**
+     * A position after a random game of 8 to 23 plies, or null if the game ended before.
+     */
+    private static PentagoBoardState randomPosition(Random rand, int[] moves) {
+        PentagoBoardState state = (PentagoBoardState) new PentagoBoard().getBoardState();
+        int plies = 8 + rand.nextInt(16);
+        for (int i = 0; i < plies && !state.gameOver(); i++)
+            state.applyMove(moves[rand.nextInt(state.getAllLegalMoves(moves))]);
+        return state.gameOver() ? null : state;
+    }
+
+    /**
+     * @return A move after which the player to move wins whatever the reply, or NO_MOVE.
+     */
+    private static int forcedWinningMove(PentagoBoardState state) {
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int player = state.getTurnPlayer();
+        int count = state.getAllLegalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            long undo = state.applyMove(moves[i]);
+            boolean wins = !state.gameOver() && winsAfterAnyReply(state, player);
+            state.undoMove(undo);
+            if (wins)
+                return moves[i];
+        }
+        return MonteCarloDecisionMaker.NO_MOVE;
+    }
+
+    /**
+     * @return True if, whatever the player to move plays, the game ends with a win of player
+     * or player has a winning move next.
+     */
+    private static boolean winsAfterAnyReply(PentagoBoardState state, int player) {
+        if (state.gameOver())
+            return state.getWinner() == player;
+        int[] replies = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int count = state.getAllLegalMoves(replies);
+        for (int i = 0; i < count; i++) {
+            long undo = state.applyMove(replies[i]);
+            boolean wins = state.gameOver() ? state.getWinner() == player : state.hasWinningMove();
+            state.undoMove(undo);
+            if (!wins)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return True if every move of the player to move ends the game with the opponent winning
+     * or leaves the opponent a winning move.
+     */
+    private static boolean everyMoveLoses(PentagoBoardState state) {
+        int[] moves = new int[PentagoBoardState.MAX_LEGAL_MOVES];
+        int opponent = 1 - state.getTurnPlayer();
+        int count = state.getAllLegalMoves(moves);
+        for (int i = 0; i < count; i++) {
+            long undo = state.applyMove(moves[i]);
+            boolean loses = state.gameOver() ? state.getWinner() == opponent : state.hasWinningMove();
+            state.undoMove(undo);
+            if (!loses)
+                return false;
+        }
+        return true;
+    }
+}
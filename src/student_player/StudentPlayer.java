@@ -1,5 +1,6 @@
 package student_player;
 
+import boardgame.BoardState;
 import boardgame.Move;
 
 import pentago_twist.PentagoMove;
@@ -7,8 +8,6 @@ import pentago_twist.PentagoPlayer;
 import pentago_twist.PentagoBoardState;
 import pentago_twist.PentagoBoardState.Piece;
 
-import student_player.MonteCarloDecisionMaker.Node;
-
 import java.util.Random;
 
 /**
@@ -17,7 +16,15 @@ import java.util.Random;
 public class StudentPlayer extends PentagoPlayer {
 
     private Random rand = new Random(2019);
-    private Node root = null;
+    // Share of the heap the search tree may take before it is pruned.
+    private static final double HEAP_BUDGET = 0.5;
+
+    // Time given to each move, in ms. Less the time manager's safety margin, a move takes about
+    // 1950 ms as it always has, not most of the server's timeouts.
+    private static final long MOVE_TIMEOUT = 2000L;
+
+    private MonteCarloDecisionMaker maker = null;
+    private final TimeManager timeManager = new TimeManager(StudentPlayer.MOVE_TIMEOUT, StudentPlayer.MOVE_TIMEOUT);
 
     /**
      * You must modify this constructor to return your student number. This is
@@ -48,46 +55,36 @@ public class StudentPlayer extends PentagoPlayer {
                     return new PentagoMove(point[0], point[1], rand.nextInt(4), rand.nextInt(2), boardState.getTurnPlayer());
         }
 
-        MonteCarloDecisionMaker maker = new MonteCarloDecisionMaker(boardState);
-
-        // Reuse the tree from last iteration.
-        Node newRoot = maker.getRoot();
-        boolean found = false;
-        if (this.root != null)
-            for (Node opponent : newRoot.children) {
-                for (Node candidate : opponent.children)
-                    if (boardEquals(candidate.state, boardState)) {
-                        newRoot = candidate;
-                        found = true;
-                        break;
-                    }
-                if (found)
-                    break;
-            }
-        maker.setRoot(newRoot);
-        PentagoMove decision = maker.makeDecision();
-
-        // Save root.
-        this.root = maker.getRoot();
-
-        return decision;
-
+        // Reuse the subtree of the position reached since the last search.
+        if (this.maker == null) {
+            this.maker = new MonteCarloDecisionMaker(boardState);
+            this.maker.setTimeManager(this.timeManager);
+            this.maker.setHeapBudget(StudentPlayer.HEAP_BUDGET);
+        } else
+            this.maker.reuseSubtree(boardState);
+        return this.maker.makeDecision();
     }
 
     /**
-     * Check if two board is the same.
-     *
-     * @param b1 A game.
-     * @param b2 A game.
-     * @return True for same.
+     * Think on the opponent's time: once our move comes back, search the replies in the
+     * background, and once the reply comes, keep its subtree for the next decision.
      */
-    private boolean boardEquals(PentagoBoardState b1, PentagoBoardState b2) {
-        Piece[][] board1 = b1.getBoard(), board2 = b2.getBoard();
-        int height = board1.length, width = board1[0].length;
-        for (int i = 0; i < height; i++)
-            for (int j = 0; j < width; j++)
-                if (board1[i][j] != board2[i][j])
-                    return false;
-        return true;
+    @Override
+    public void movePlayed(BoardState boardState, Move move) {
+        if (this.maker == null)
+            return;
+        PentagoBoardState state = (PentagoBoardState) ((PentagoBoardState) boardState).clone();
+        if (state.gameOver())
+            this.maker.stopPondering();
+        else if (state.getTurnPlayer() == getColor())
+            this.maker.reuseSubtree(state);
+        else
+            this.maker.startPondering(state);
+    }
+
+    @Override
+    public void gameOver(String msg, BoardState boardState) {
+        if (this.maker != null)
+            this.maker.stopPondering();
     }
 }
\ No newline at end of file
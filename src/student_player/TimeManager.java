@@ -0,0 +1,171 @@
+package student_player;
+
+import boardgame.Server;
+import pentago_twist.PentagoBoardState;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time budget of the search engines, one decision at a time.
+ *
+ * The budget of a turn is the server's timeout for it, the first move having its own, minus a
+ * safety margin, and only a part of that late in the game when few moves are left to search.
+ * The margin grows with the longest garbage collection pause seen so far, so that a collection
+ * right before the deadline does not make the move late. The deadline is on System.nanoTime(),
+ * which unlike the wall clock never jumps.
+ *
+ * Besides the deadline, an engine can report its current best move as it goes and stop early
+ * once that move has not changed for a while, or once the engine finds that no other move can
+ * overtake it with the visits the search can still make at the pace it has had so far.
+ *
+ * Not thread-safe: one search thread should query it.
+ */
+public class TimeManager {
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final int NO_MOVE = -1;
+
+    // Safety margin: never less than MIN_SAFETY_MARGIN ms, PAUSE_FACTOR times the longest pause
+    // seen, and never more than MAX_SAFETY_FRACTION of the timeout.
+    private static final long MIN_SAFETY_MARGIN = 50L;
+    private static final double PAUSE_FACTOR = 2.0;
+    private static final double MAX_SAFETY_FRACTION = 0.25;
+
+    // In the last ENDGAME_TURNS turns the budget shrinks with the turns left, to MIN_ENDGAME_FRACTION.
+    private static final int ENDGAME_TURNS = 6;
+    private static final double MIN_ENDGAME_FRACTION = 0.25;
+
+    // Early stop: the best move is stable once unchanged for STABLE_FRACTION of the budget,
+    // and no search stops before MIN_SEARCH_FRACTION of it.
+    private static final double STABLE_FRACTION = 0.5;
+    private static final double MIN_SEARCH_FRACTION = 0.25;
+
+    private final long moveTimeout;
+    private final long firstMoveTimeout;
+
+    // Collector totals at the last measurement, and the longest average pause between two, in ns.
+    private long collectionTime;
+    private long collectionCount;
+    private long longestPause;
+
+    // Current turn.
+    private long start;
+    private long budget;
+    private long deadline;
+    private int bestMove;
+    private long bestSince;
+
+    /**
+     * Budget with the timeouts the server uses by default.
+     */
+    public TimeManager() {
+        this(Server.DEFAULT_TIMEOUT, Server.FIRST_MOVE_TIMEOUT);
+    }
+
+    /**
+     * @param moveTimeout      Time the server gives for a move, in ms.
+     * @param firstMoveTimeout Time the server gives for the first move of each player, in ms.
+     */
+    public TimeManager(long moveTimeout, long firstMoveTimeout) {
+        if (moveTimeout <= 0 || firstMoveTimeout <= 0)
+            throw new IllegalArgumentException("Timeouts must be positive: " + moveTimeout + ", " + firstMoveTimeout);
+        this.moveTimeout = moveTimeout;
+        this.firstMoveTimeout = firstMoveTimeout;
+        measurePauses();
+        startTurn(1);
+    }
+
+    /**
+     * Start the clock of a decision.
+     *
+     * @param turnNumber Turn number of the position to move in, from PentagoBoardState.getTurnNumber().
+     */
+    public void startTurn(int turnNumber) {
+        this.start = System.nanoTime();
+        measurePauses();
+
+        long timeout = (turnNumber == 0 ? this.firstMoveTimeout : this.moveTimeout) * NANOS_PER_MILLI;
+        long margin = Math.min(Math.max(MIN_SAFETY_MARGIN * NANOS_PER_MILLI, (long) (PAUSE_FACTOR * this.longestPause)),
+                (long) (MAX_SAFETY_FRACTION * timeout));
+        int turnsLeft = Math.max(1, PentagoBoardState.MAX_TURNS - turnNumber);
+        double fraction = Math.max(MIN_ENDGAME_FRACTION, Math.min(1.0, (double) turnsLeft / ENDGAME_TURNS));
+
+        this.budget = (long) ((timeout - margin) * fraction);
+        this.deadline = this.start + this.budget;
+        this.bestMove = NO_MOVE;
+        this.bestSince = this.start;
+    }
+
+    /**
+     * @return True once the deadline of the current turn has passed.
+     */
+    public boolean outOfTime() {
+        return System.nanoTime() - this.deadline >= 0;
+    }
+
+    /**
+     * Estimate how much more the search can do in the current turn.
+     *
+     * @param newVisits Visits the search added since the turn started.
+     * @return Visits the search can still add before the deadline at the pace it has had so far.
+     */
+    public long visitsLeft(long newVisits) {
+        long now = System.nanoTime();
+        long elapsed = Math.max(1, now - this.start);
+        return (long) Math.ceil((double) newVisits / elapsed * Math.max(0, this.deadline - now));
+    }
+
+    /**
+     * Report the current best move and decide whether to stop: at the deadline, when the best
+     * move is settled, or when it has been the same for long enough.
+     *
+     * @param bestMove Current best move.
+     * @param settled  Whether the engine found that no other move can overtake the best one in
+     *                 the visits left, see visitsLeft().
+     * @return True if the search should stop.
+     */
+    public boolean shouldStop(int bestMove, boolean settled) {
+        long now = System.nanoTime();
+        if (now - this.deadline >= 0 || settled)
+            return true;
+        if (bestMove != this.bestMove) {
+            this.bestMove = bestMove;
+            this.bestSince = now;
+        }
+
+        long elapsed = now - this.start;
+        return elapsed >= MIN_SEARCH_FRACTION * this.budget && now - this.bestSince >= STABLE_FRACTION * this.budget;
+    }
+
+    /**
+     * @return Deadline of the current turn, on the System.nanoTime() clock.
+     */
+    public long getDeadline() {
+        return this.deadline;
+    }
+
+    /**
+     * @return Time allowed for the current turn, in ns.
+     */
+    public long getBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Update the longest pause with the average pause of the collections since the last call.
+     */
+    private void measurePauses() {
+        long time = 0, count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // Either is -1 if the collector does not report it.
+            time += Math.max(0, collector.getCollectionTime());
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        if (count > this.collectionCount)
+            this.longestPause = Math.max(this.longestPause,
+                    (time - this.collectionTime) * NANOS_PER_MILLI / (count - this.collectionCount));
+        this.collectionTime = time;
+        this.collectionCount = count;
+    }
+}
@@ -0,0 +1,126 @@
+package student_player;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from 64-bit position hashes to doubles.
+ * Keys and values live in primitive arrays, so lookups and inserts never allocate,
+ * and clear() is O(1) by bumping a generation stamp. Also usable as a set of hashes.
+ */
+public class TranspositionTable {
+
+    private long[] keys;
+    private double[] values;
+    private int[] stamps;
+    private int stamp;
+    private int size;
+
+    /**
+     * @param expectedSize Number of entries the table should hold before it has to grow.
+     */
+    public TranspositionTable(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new double[capacity];
+        this.stamps = new int[capacity];
+        this.stamp = 1;
+    }
+
+    public boolean contains(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param key          A position hash.
+     * @param defaultValue Returned when the key is absent.
+     * @return The stored value.
+     */
+    public double get(long key, double defaultValue) {
+        int slot = slotOf(key);
+        return slot >= 0 ? this.values[slot] : defaultValue;
+    }
+
+    /**
+     * Insert or overwrite a value.
+     *
+     * @param key   A position hash.
+     * @param value Its value.
+     */
+    public void put(long key, double value) {
+        if (2 * (this.size + 1) > this.keys.length)
+            grow();
+        int mask = this.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (this.stamps[slot] == this.stamp) {
+            if (this.keys[slot] == key) {
+                this.values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.stamps[slot] = this.stamp;
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        this.size++;
+    }
+
+    /**
+     * Insert a key into the table used as a set.
+     *
+     * @param key A position hash.
+     * @return True if the key was not present yet.
+     */
+    public boolean add(long key) {
+        if (contains(key))
+            return false;
+        put(key, 0);
+        return true;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void clear() {
+        this.size = 0;
+        if (++this.stamp == 0) {
+            Arrays.fill(this.stamps, 0);
+            this.stamp = 1;
+        }
+    }
+
+    private int slotOf(long key) {
+        int mask = this.keys.length - 1;
+        int slot = mix(key) & mask;
+        while (this.stamps[slot] == this.stamp) {
+            if (this.keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        double[] oldValues = this.values;
+        int[] oldStamps = this.stamps;
+        int oldStamp = this.stamp;
+
+        this.keys = new long[oldKeys.length * 2];
+        this.values = new double[oldKeys.length * 2];
+        this.stamps = new int[oldKeys.length * 2];
+        this.stamp = 1;
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldStamps[i] == oldStamp)
+                put(oldKeys[i], oldValues[i]);
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        return (int) (key ^ (key >>> 29));
+    }
+}